@@ -0,0 +1,46 @@
+package com.example.superrankinglist.benchmark;
+
+import com.example.superrankinglist.common.ScoreCodec;
+
+import java.util.Random;
+
+/**
+ * 基准测试数据
+ */
+public final class BenchmarkData {
+    public static final long MAX_SCORE = 1000000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * 按指定分布生成用户点赞数
+     * uniform：在积分范围内均匀分布
+     * skewed：大部分用户集中在低分段，少数用户分数很高
+     */
+    public static long[] likes(int users, String distribution, long seed) {
+        Random random = new Random(seed);
+        long[] likes = new long[users];
+        for (int i = 0; i < users; i++) {
+            if ("skewed".equals(distribution)) {
+                likes[i] = 1 + Math.min(MAX_SCORE - 1, (long) (-Math.log(1 - random.nextDouble()) * 2000));
+            } else {
+                likes[i] = 1 + (long) (random.nextDouble() * (MAX_SCORE - 1));
+            }
+        }
+        return likes;
+    }
+
+    /**
+     * 按指定分布生成用户积分，积分格式与排行榜一致：点赞数 * 2^TIME_BITS + 时间部分
+     */
+    public static double[] scores(int users, String distribution, long seed) {
+        long[] likes = likes(users, distribution, seed);
+        Random random = new Random(seed + 1);
+        double[] scores = new double[users];
+        for (int i = 0; i < users; i++) {
+            scores[i] = likes[i] << ScoreCodec.TIME_BITS | (random.nextLong() & ScoreCodec.TIME_MASK);
+        }
+        return scores;
+    }
+}
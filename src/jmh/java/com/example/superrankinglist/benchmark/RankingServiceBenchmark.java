@@ -0,0 +1,123 @@
+package com.example.superrankinglist.benchmark;
+
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.dto.RankingListQueryDto;
+import com.example.superrankinglist.pojo.RankingItem;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.service.impl.LikeServiceImpl;
+import com.example.superrankinglist.service.impl.RankingListServiceImpl;
+import com.example.superrankinglist.service.impl.SegmentTreeServiceImpl;
+import com.example.superrankinglist.utils.UserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+
+/**
+ * 点赞和排行榜分页查询的基准测试
+ * 服务在Spring容器外组装，数据库相关的依赖不参与这两条路径
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RankingServiceBenchmark {
+    private static final long RANKING_LIST_ID = 1L;
+
+    @Param({"1000", "10000"})
+    private int users;
+
+    @Param({"uniform", "skewed"})
+    private String distribution;
+
+    @Param({"true", "false"})
+    private boolean inMemory;
+
+    private EmbeddedRedis redis;
+    private SegmentTreeServiceImpl segmentTreeService;
+    private LikeServiceImpl likeService;
+    private RankingListServiceImpl rankingListService;
+    private LikeDto likeDto;
+    private RankingListQueryDto queryDto;
+    private long userCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = new EmbeddedRedis();
+
+        // 初始化排行榜数据
+        double[] scores = BenchmarkData.scores(users, distribution, 42);
+        Set<ZSetOperations.TypedTuple<Object>> tuples = new HashSet<>();
+        for (int i = 0; i < users; i++) {
+            tuples.add(new DefaultTypedTuple<>((long) i + 1, scores[i]));
+        }
+        redis.getRedisTemplate().opsForZSet().add(RANKING_KEY_PREFIX + RANKING_LIST_ID, tuples);
+
+        RankingConfig rankingConfig = new RankingConfig();
+        rankingConfig.getSegment().setInMemory(inMemory);
+        segmentTreeService = new SegmentTreeServiceImpl(redis.getStringRedisTemplate(), rankingConfig);
+
+        likeService = new LikeServiceImpl();
+        ReflectionTestUtils.setField(likeService, "stringRedisTemplate", redis.getStringRedisTemplate());
+        ReflectionTestUtils.setField(likeService, "segmentTreeServiceImpl", segmentTreeService);
+        ReflectionTestUtils.setField(likeService, "rankingConfig", rankingConfig);
+        likeService.init();
+
+        rankingListService = new RankingListServiceImpl();
+        ReflectionTestUtils.setField(rankingListService, "redisTemplate", redis.getRedisTemplate());
+        ReflectionTestUtils.setField(rankingListService, "stringRedisTemplate", redis.getStringRedisTemplate());
+        ReflectionTestUtils.setField(rankingListService, "segmentTreeService", segmentTreeService);
+        ReflectionTestUtils.setField(rankingListService, "likeService", likeService);
+        rankingListService.init();
+
+        likeDto = new LikeDto();
+        likeDto.setRankingListId(RANKING_LIST_ID);
+        queryDto = new RankingListQueryDto();
+        queryDto.setRankingListId(RANKING_LIST_ID);
+        queryDto.setPageNum(1);
+        queryDto.setPageSize(20);
+
+        // 提前加载线段树，避免首次点赞的初始化计入测量
+        segmentTreeService.getUserRank(RANKING_LIST_ID, 1.0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        segmentTreeService.shutdown();
+        UserContext.clear();
+        redis.close();
+    }
+
+    @Benchmark
+    public boolean like() {
+        userCursor = userCursor < users ? userCursor + 1 : 1;
+        UserContext.setUserId(userCursor);
+        return likeService.like(likeDto);
+    }
+
+    @Benchmark
+    public Page<RankingItem> queryRankingList() {
+        return rankingListService.queryRankingList(queryDto);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.superrankinglist.benchmark;
+
+import com.example.superrankinglist.service.SegmentTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线段树积分更新和排名查询的基准测试
+ * 内存模式只在构建时访问Redis，Redis模式每次操作执行一次Lua脚本
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SegmentTreeBenchmark {
+
+    @Param({"64", "128", "256"})
+    private int leaves;
+
+    @Param({"10000", "100000"})
+    private int users;
+
+    @Param({"uniform", "skewed"})
+    private String distribution;
+
+    @Param({"true", "false"})
+    private boolean inMemory;
+
+    private EmbeddedRedis redis;
+    private SegmentTree segmentTree;
+    private long[] likes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = new EmbeddedRedis();
+        likes = BenchmarkData.likes(users, distribution, 42);
+        segmentTree = new SegmentTree("benchmark:segment", redis.getStringRedisTemplate(), inMemory);
+        segmentTree.buildTreeReal(BenchmarkData.MAX_SCORE, leaves);
+        segmentTree.initializeCounts(likes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        redis.close();
+    }
+
+    @Benchmark
+    public void updateScore() {
+        int i = next();
+        long oldScore = likes[i];
+        long newScore = oldScore + 1 < BenchmarkData.MAX_SCORE ? oldScore + 1 : 1;
+        segmentTree.updateScore(oldScore, newScore);
+        likes[i] = newScore;
+    }
+
+    @Benchmark
+    public long getRank() {
+        return segmentTree.getRank(likes[next()]);
+    }
+
+    private int next() {
+        cursor = cursor + 1 < likes.length ? cursor + 1 : 0;
+        return cursor;
+    }
+}
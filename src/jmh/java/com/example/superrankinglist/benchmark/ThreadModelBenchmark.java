@@ -0,0 +1,114 @@
+package com.example.superrankinglist.benchmark;
+
+import com.example.superrankinglist.utils.UserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+
+/**
+ * 请求线程模型的基准测试
+ * 每次调用同时提交10000个请求，对比Tomcat默认的200线程池和每个请求一个虚拟线程的吞吐量（请求数/秒）。
+ * 每个请求设置UserContext后通过Lettuce查询一次用户积分，再阻塞blockingMs毫秒模拟数据库和Lua脚本等慢速IO，
+ * 最后校验UserContext未串号。进程内Redis执行Lua脚本很慢，会掩盖线程模型的差异，所以请求中只执行简单命令。
+ * 以-Djdk.tracePinnedThreads=short运行，虚拟线程持有监视器时阻塞会打印堆栈
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.tracePinnedThreads=short")
+@State(Scope.Benchmark)
+public class ThreadModelBenchmark {
+    private static final long RANKING_LIST_ID = 1L;
+    private static final int CONCURRENT_REQUESTS = 10000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int USERS = 1000;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"0", "20", "100"})
+    private int blockingMs;
+
+    private EmbeddedRedis redis;
+    private StringRedisTemplate stringRedisTemplate;
+    private ExecutorService executor;
+    private final LongAdder contextMismatches = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        redis = new EmbeddedRedis();
+
+        stringRedisTemplate = redis.getStringRedisTemplate();
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (int i = 1; i <= USERS; i++) {
+            tuples.add(new DefaultTypedTuple<>(String.valueOf(i), (double) i));
+        }
+        stringRedisTemplate.opsForZSet().add(RANKING_KEY_PREFIX + RANKING_LIST_ID, tuples);
+
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        redis.close();
+        if (contextMismatches.sum() > 0) {
+            throw new IllegalStateException("UserContext串号次数: " + contextMismatches.sum());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_REQUESTS)
+    public void concurrentRequests() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(CONCURRENT_REQUESTS);
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            long userId = i % USERS + 1;
+            executor.execute(() -> {
+                try {
+                    UserContext.setUserId(userId);
+                    stringRedisTemplate.opsForZSet().score(RANKING_KEY_PREFIX + RANKING_LIST_ID, String.valueOf(userId));
+                    if (blockingMs > 0) {
+                        Thread.sleep(blockingMs);
+                    }
+                    if (!Long.valueOf(userId).equals(UserContext.getUserId())) {
+                        contextMismatches.increment();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    UserContext.clear();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.superrankinglist.common;
+
+import lombok.Getter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 预先序列化的排行榜分页响应
+ * 保存响应体的JSON字节和gzip压缩后的字节，直接写入响应，不再组装对象和执行JSON序列化
+ */
+@Getter
+public class CachedPage {
+
+    /**
+     * 响应体的JSON字节
+     */
+    private final byte[] json;
+
+    /**
+     * gzip压缩后的JSON字节
+     */
+    private final byte[] gzip;
+
+    /**
+     * 由排行榜、版本号和分页参数组成的ETag
+     */
+    private final String etag;
+
+    public CachedPage(byte[] json, byte[] gzip, String etag) {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = etag;
+    }
+
+    /**
+     * 生成响应，客户端接受gzip时返回压缩后的字节
+     * @param acceptEncoding 请求头Accept-Encoding的值
+     */
+    public ResponseEntity<byte[]> toResponse(String acceptEncoding) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzip);
+        }
+        return builder.body(json);
+    }
+}
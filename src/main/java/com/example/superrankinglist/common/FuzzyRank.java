@@ -0,0 +1,21 @@
+package com.example.superrankinglist.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 线段树估算的粗略排名
+ */
+@Getter
+@AllArgsConstructor
+public class FuzzyRank {
+    /**
+     * 估算的排名（高于该分数的用户数量，从0开始）
+     */
+    private final long rank;
+
+    /**
+     * 排名的误差上界，即估算所在区间内的用户数量
+     */
+    private final long errorBound;
+}
@@ -0,0 +1,31 @@
+package com.example.superrankinglist.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 一次待写入Redis的积分更新
+ */
+@Getter
+@AllArgsConstructor
+public class LikeEvent {
+    /**
+     * 排行榜ID
+     */
+    private final Long rankingListId;
+
+    /**
+     * 用户ID
+     */
+    private final Long userId;
+
+    /**
+     * 积分增量
+     */
+    private final long increment;
+
+    /**
+     * 点赞时间（毫秒），作为积分小数部分的依据
+     */
+    private final long timestamp;
+}
@@ -0,0 +1,58 @@
+package com.example.superrankinglist.common;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * 排行榜查询接口的ETag
+ * ETag由排行榜版本号和查询参数组成，排行榜的积分变化时版本号加1，
+ * 客户端在If-None-Match中带回的ETag与当前版本号一致时返回304，不再查询和传输数据
+ */
+public class RankingETag {
+
+    private RankingETag() {
+    }
+
+    /**
+     * 排行榜分页的ETag
+     */
+    public static String page(Long rankingListId, long version, int pageNum, int pageSize) {
+        return "W/\"" + rankingListId + "-" + version + "-" + pageNum + "-" + pageSize + "\"";
+    }
+
+    /**
+     * 用户排名的ETag
+     */
+    public static String userRank(Long rankingListId, long version, Long userId) {
+        return "W/\"" + rankingListId + "-" + version + "-u" + userId + "\"";
+    }
+
+    /**
+     * 请求头If-None-Match是否包含该ETag，按弱比较处理，支持多个ETag和*
+     * @param ifNoneMatch 请求头If-None-Match的值
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        String opaque = strip(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || strip(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 304响应，带上当前的ETag
+     */
+    public static ResponseEntity<Void> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private static String strip(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
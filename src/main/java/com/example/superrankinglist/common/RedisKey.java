@@ -7,6 +7,27 @@ public class RedisKey {
     public static final String RANKING_KEY_PREFIX = "ranking:list:";
 
     public static final String SEGMENT_KEY_PREFIX = "ranking:segment:";
+
+    /**
+     * 排行榜版本号key前缀，每次修改排行榜中的积分时加1，用于生成ETag和判断快照是否过期
+     * 不能以RANKING_KEY_PREFIX开头，否则会被当作排行榜扫描
+     */
+    public static final String RANKING_VERSION_KEY_PREFIX = "ranking:version:";
+
+    /**
+     * 线段树元数据key前缀，保存当前生效的线段树版本和叶子区间边界
+     */
+    public static final String SEGMENT_META_KEY_PREFIX = "ranking:segment:meta:";
+
+    /**
+     * 重新划分线段树叶子区间的锁key前缀
+     */
+    public static final String SEGMENT_LOCK_KEY_PREFIX = "ranking:segment:lock:";
+
+    /**
+     * 已被替换、等待删除的线段树版本，成员为 排行榜ID:版本，分数为被替换的时间
+     */
+    public static final String SEGMENT_RETIRED_KEY = "ranking:segment:retired";
     
     /**
      * 用户点赞key前缀
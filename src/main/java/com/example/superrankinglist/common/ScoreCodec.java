@@ -0,0 +1,84 @@
+package com.example.superrankinglist.common;
+
+/**
+ * 排行榜积分编码
+ * 有序集合中的分数为 点赞数 * 2^TIME_BITS + 时间部分，不超过53位，double可以精确表示：
+ * 高位为点赞数，低TIME_BITS位为 TIME_MASK - 距赛季开始的时间（按timeUnitMs取整），
+ * 点赞数相同时先达到该点赞数的用户时间部分更大、排名更靠前；先后顺序只精确到timeUnitMs，
+ * 同一个时间单位内达到相同点赞数的用户时间部分相同，按成员倒序排列。
+ * 解码只需移位，线段树只使用点赞数，全部为整数运算。
+ * 分数小于2^TIME_BITS的是旧格式（点赞数 + 4位时间戳小数），解码时取整数部分，迁移前新旧格式可以共存
+ */
+public class ScoreCodec {
+
+    /**
+     * 时间部分的位数，按1秒的时间单位可以覆盖约8.5年的赛季，其余位数留给点赞数
+     */
+    public static final int TIME_BITS = 28;
+
+    /**
+     * 时间部分的最大值，也是时间部分的掩码
+     */
+    public static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    /**
+     * 编码后不超过53位（double的精确整数范围）时允许的最大点赞数
+     */
+    public static final long MAX_LIKES = (1L << (53 - TIME_BITS)) - 1;
+
+    private final long seasonStartMs;
+    private final long timeUnitMs;
+
+    /**
+     * @param seasonStartMs 赛季开始时间（毫秒时间戳）
+     * @param timeUnitMs 时间部分的单位（毫秒）
+     */
+    public ScoreCodec(long seasonStartMs, long timeUnitMs) {
+        if (timeUnitMs <= 0) {
+            throw new IllegalArgumentException("timeUnitMs must be positive");
+        }
+        this.seasonStartMs = seasonStartMs;
+        this.timeUnitMs = timeUnitMs;
+    }
+
+    /**
+     * 计算时间部分：距赛季开始越久，时间部分越小
+     * 早于赛季开始的时间按赛季开始计算，超出时间部分范围的按最大时长计算
+     * @param timestampMs 点赞时间（毫秒）
+     */
+    public long timePart(long timestampMs) {
+        long elapsed = Math.max(0, timestampMs - seasonStartMs) / timeUnitMs;
+        return TIME_MASK - Math.min(elapsed, TIME_MASK);
+    }
+
+    /**
+     * 编码点赞数和点赞时间
+     */
+    public long encode(long likes, long timestampMs) {
+        return likes << TIME_BITS | timePart(timestampMs);
+    }
+
+    /**
+     * 从有序集合的分数中解码点赞数，兼容旧格式
+     */
+    public static long likes(double score) {
+        if (isLegacy(score)) {
+            return (long) Math.floor(score);
+        }
+        return (long) score >>> TIME_BITS;
+    }
+
+    /**
+     * 从有序集合的分数中解码点赞数，分数为null时返回0，即不在任何叶子区间内
+     */
+    public static long likes(Double score) {
+        return score != null ? likes(score.doubleValue()) : 0;
+    }
+
+    /**
+     * 是否为旧格式（点赞数 + 4位时间戳小数）的分数
+     */
+    public static boolean isLegacy(double score) {
+        return score < (double) (1L << TIME_BITS);
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /**
  * 排行榜配置类
  */
@@ -22,4 +25,336 @@ public class RankingConfig {
      * 默认每天凌晨2点执行
      */
     private String cleanupCron = "0 0 2 * * ?";
+
+    /**
+     * 线段树配置
+     */
+    private Segment segment = new Segment();
+
+    /**
+     * 点赞配置
+     */
+    private Like like = new Like();
+
+    /**
+     * 点赞记录持久化配置
+     */
+    private Persist persist = new Persist();
+
+    /**
+     * 排行榜项目同步配置
+     */
+    private ItemSync itemSync = new ItemSync();
+
+    /**
+     * 积分编码配置
+     */
+    private Score score = new Score();
+
+    /**
+     * 前K名快照配置
+     */
+    private Snapshot snapshot = new Snapshot();
+
+    /**
+     * 前K名快照相关配置项
+     * 被查询过的排行榜在本地保存前K名的快照，落在快照范围内的分页查询不访问Redis
+     */
+    @Data
+    public static class Snapshot {
+
+        /**
+         * 是否启用前K名快照
+         */
+        private boolean enabled = true;
+
+        /**
+         * 快照保存的名次数量
+         */
+        private int topK = 1000;
+
+        /**
+         * 检查并重建快照的间隔（毫秒），版本号变化的排行榜在下次检查时重建
+         */
+        private long refreshIntervalMs = 200;
+
+        /**
+         * 快照的最大存活时间（毫秒），超过后即使版本号没有变化也重建；其他实例的写入通过排行榜版本号发现
+         */
+        private long maxAgeMs = 30000;
+
+        /**
+         * 排行榜超过该时长（毫秒）未被查询时，不再维护其快照
+         */
+        private long idleTimeoutMs = 60000;
+
+        /**
+         * 每个快照最多缓存的已序列化分页数量，超过后其余分页每次请求时序列化
+         */
+        private int maxCachedPages = 50;
+    }
+
+    /**
+     * 积分编码相关配置项
+     * 有序集合中的分数为 点赞数 * 2^28 + 时间部分，时间部分为距赛季开始的时间取反，点赞数相同时先达到的用户排名靠前
+     */
+    @Data
+    public static class Score {
+
+        /**
+         * 赛季开始时间（毫秒时间戳），默认2025-01-01 00:00:00 UTC
+         */
+        private long seasonStartMs = 1735689600000L;
+
+        /**
+         * 时间部分的单位（毫秒），28位时间部分可以覆盖 2^28 * timeUnitMs 的赛季时长；
+         * 点赞数相同时的先后顺序只精确到该单位，赛季不超过约310天时可以使用100毫秒
+         */
+        private long timeUnitMs = 1000;
+
+        /**
+         * 是否在启动后将旧格式（点赞数 + 4位时间戳小数）的积分迁移为新格式
+         */
+        private boolean migrateOnStartup = true;
+    }
+
+    /**
+     * 排行榜项目同步相关配置项
+     * 定期将Redis中有变化的用户积分和排名写入ranking_item表
+     */
+    @Data
+    public static class ItemSync {
+
+        /**
+         * 是否将Redis中的积分和排名同步到ranking_item表
+         */
+        private boolean enabled = true;
+
+        /**
+         * 同步间隔（毫秒）
+         */
+        private long intervalMs = 5000;
+
+        /**
+         * 计算排名时每次从有序集合读取的成员数量
+         */
+        private int scanChunkSize = 1000;
+
+        /**
+         * 每个多行INSERT包含的最大记录数
+         */
+        private int batchSize = 500;
+    }
+
+    /**
+     * 点赞记录持久化相关配置项
+     */
+    @Data
+    public static class Persist {
+
+        /**
+         * 是否将点赞记录异步写入like_record表
+         */
+        private boolean enabled = true;
+
+        /**
+         * 点赞记录写入数据库的间隔（毫秒）
+         */
+        private long flushIntervalMs = 1000;
+
+        /**
+         * 每个多行INSERT包含的最大记录数，队列中的记录达到该数量时立即写入
+         */
+        private int batchSize = 500;
+
+        /**
+         * 内存队列容量，队列满时点赞记录直接写入溢出文件
+         */
+        private int queueCapacity = 100000;
+
+        /**
+         * 写入失败时的最大重试次数
+         */
+        private int maxRetries = 3;
+
+        /**
+         * 首次重试前的等待时间（毫秒），之后每次加倍
+         */
+        private long retryBackoffMs = 100;
+
+        /**
+         * 溢出文件路径，数据库不可用时点赞记录追加到该文件，恢复后重放
+         */
+        private String spillFile = "data/like-record-spill.log";
+    }
+
+    /**
+     * 点赞相关配置项
+     */
+    @Data
+    public static class Like {
+
+        /**
+         * 内部服务调用批量点赞接口时携带服务令牌的请求头
+         */
+        public static final String SERVICE_TOKEN_HEADER = "X-Service-Token";
+
+        /**
+         * 批量点赞接口单次请求允许的最大条目数
+         */
+        private int batchMaxSize = 5000;
+
+        /**
+         * 批量点赞接口的服务令牌，只有请求头中携带该令牌的内部服务可以调用；为空时拒绝所有批量点赞请求
+         */
+        private String batchServiceToken = "";
+
+        /**
+         * 热点用户阈值（每秒点赞次数），超过后该用户的点赞在本地合并后再写入Redis，0表示不启用
+         */
+        private long hotThreshold = 0;
+
+        /**
+         * 热点用户点赞的合并窗口（毫秒），即合并后的点赞写入Redis的间隔
+         */
+        private long hotWindowMs = 50;
+
+        /**
+         * 是否启用异步点赞
+         * 开启后点赞请求校验后放入有界队列并返回202，由消费线程批量写入Redis；队列满时返回429
+         */
+        private boolean asyncIngest = false;
+
+        /**
+         * 异步点赞的分片数量，同一排行榜的点赞总是进入同一个分片，由唯一的消费线程按顺序写入
+         */
+        private int asyncShards = 4;
+
+        /**
+         * 每个分片的队列容量
+         */
+        private int asyncQueueCapacity = 65536;
+
+        /**
+         * 关闭时等待队列中的点赞写完的最长时间（毫秒）
+         */
+        private long asyncShutdownTimeoutMs = 30000;
+
+        /**
+         * 异步点赞写入Redis失败时，首次重试前的等待时间（毫秒），之后每次加倍
+         */
+        private long asyncRetryBackoffMs = 100;
+
+        /**
+         * 异步点赞重试等待时间的上限（毫秒），Redis恢复前一直按该间隔重试
+         */
+        private long asyncMaxRetryBackoffMs = 5000;
+
+        /**
+         * 是否启用点赞去重
+         * 开启后每个用户在每个排行榜只能点赞一次，点赞脚本通过Redis位图判断，不查询数据库
+         */
+        private boolean dedup = false;
+
+        /**
+         * 启用去重时，是否在启动后从like_record表回填点赞用户位图
+         */
+        private boolean dedupBackfill = true;
+
+        /**
+         * 请求携带的服务令牌是否与配置一致，按固定时间比较
+         */
+        public boolean isTrustedService(String serviceToken) {
+            if (batchServiceToken == null || batchServiceToken.isEmpty() || serviceToken == null) {
+                return false;
+            }
+            return MessageDigest.isEqual(batchServiceToken.getBytes(StandardCharsets.UTF_8),
+                    serviceToken.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 线段树相关配置项
+     */
+    @Data
+    public static class Segment {
+
+        /**
+         * 是否启用内存模式
+         * 开启后区间计数保存在本地数组中，排名查询不再访问Redis，
+         * 计数变化异步回写到Redis Hash中持久化
+         */
+        private boolean inMemory = false;
+
+        /**
+         * 是否启用写缓冲（write-behind）
+         * 开启后Redis模式下的区间计数变化先在本地合并，再批量回写Redis；内存模式始终缓冲
+         */
+        private boolean writeBehind = false;
+
+        /**
+         * 缓冲的计数变化回写Redis的间隔（毫秒）
+         */
+        private long flushIntervalMs = 10;
+
+        /**
+         * 缓冲的积分更新次数达到该值时立即回写，0表示只按间隔回写
+         */
+        private long flushThreshold = 1000;
+
+        /**
+         * 粗略排名允许的最大延迟（毫秒）
+         * Redis模式下查询排名时，若距上次回写已超过该值且有未回写的变化，先回写再查询；0表示不限制
+         */
+        private long maxStalenessMs = 0;
+
+        /**
+         * 同时加载到内存中的线段树数量上限，超过后淘汰最久未使用的线段树
+         */
+        private int maxTrees = 256;
+
+        /**
+         * 叶子区间数量，必须是2的幂次方
+         * 修改后已有的线段树按原来的数量加载，需要删除Redis中的线段树数据后重新初始化
+         */
+        private int leafCount = 128;
+
+        /**
+         * 叶子区间划分策略
+         * uniform：按分数范围均匀划分
+         * equi-depth：按分数分布划分，使每个叶子区间内的用户数量大致相同
+         */
+        private String leafStrategy = "uniform";
+
+        /**
+         * equi-depth策略下重新划分叶子区间的间隔（毫秒）
+         */
+        private long rebalanceIntervalMs = 600000;
+
+        /**
+         * 重新划分叶子区间时持有的Redis锁的过期时间（毫秒），同一排行榜同时只有一个实例重新划分
+         */
+        private long rebalanceLockMs = 60000;
+
+        /**
+         * 检查其他实例是否已切换线段树版本的间隔（毫秒），版本变化的线段树在下次使用时重新加载；
+         * 内存模式下同时按该间隔从Redis重新读取区间计数，合并其他实例的变化
+         */
+        private long versionCheckIntervalMs = 1000;
+
+        /**
+         * 切换版本后旧版本线段树数据的保留时间（毫秒），需要大于版本检查间隔，
+         * 保证其他实例在旧数据删除前已切换到新版本
+         */
+        private long retiredGraceMs = 60000;
+
+        /**
+         * 每个叶子区间内的子区间数量，用于估算叶子区间内的排名，0表示不启用
+         */
+        private int sketchBuckets = 0;
+
+        public boolean isEquiDepth() {
+            return "equi-depth".equalsIgnoreCase(leafStrategy);
+        }
+    }
 } 
\ No newline at end of file
@@ -1,29 +1,90 @@
 package com.example.superrankinglist.controller;
 
 import com.example.superrankinglist.common.Result;
+import com.example.superrankinglist.config.RankingConfig;
 
+import com.example.superrankinglist.dto.LikeBatchEntryDto;
+import com.example.superrankinglist.dto.LikeBatchResultDto;
+import com.example.superrankinglist.dto.LikeCheckDto;
 import com.example.superrankinglist.dto.LikeDto;
 import com.example.superrankinglist.service.LikeService;
 import com.example.superrankinglist.service.RankingListService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 点赞控制器
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/likes")
 public class LikeController {
 
     @Autowired
     private LikeService likeService;
 
+    @Autowired
+    private RankingConfig rankingConfig;
+
     /**
      * 点赞
+     * withRank为true时返回点赞后的积分和排名，客户端无需再查询用户排名；
+     * 启用异步点赞且不需要排名时，点赞入队后返回202，队列已满时返回429
      * @param request 点赞请求xx
      */
     @PostMapping("/like")
-    public Result<Boolean> like(@RequestBody LikeDto request) {
-        return Result.success(likeService.like(request));
+    public ResponseEntity<Result<?>> like(@RequestBody LikeDto request) {
+        if (Boolean.TRUE.equals(request.getWithRank())) {
+            return ResponseEntity.ok(Result.success(likeService.likeWithRank(request)));
+        }
+        if (likeService.isAsyncIngest()) {
+            if (!likeService.submitLike(request)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .body(Result.error(HttpStatus.TOO_MANY_REQUESTS.value(), "点赞请求过多，请稍后重试"));
+            }
+            return ResponseEntity.accepted().body(Result.success(true));
+        }
+        return ResponseEntity.ok(Result.success(likeService.like(request)));
+    }
+
+    /**
+     * 批量点赞
+     * 供游戏服务器汇总后批量提交，每个条目的结果按下标与请求对应；
+     * 条目中的用户和积分增量由调用方指定，只允许携带服务令牌的内部服务调用，否则返回403
+     * @param entries 点赞条目列表
+     * @param serviceToken 请求头X-Service-Token
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Result<List<LikeBatchResultDto>>> likeBatch(
+            @RequestBody List<LikeBatchEntryDto> entries,
+            @RequestHeader(value = RankingConfig.Like.SERVICE_TOKEN_HEADER, required = false) String serviceToken) {
+        if (!rankingConfig.getLike().isTrustedService(serviceToken)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Result.error(HttpStatus.FORBIDDEN.value(), "只允许内部服务调用批量点赞接口"));
+        }
+        return ResponseEntity.ok(Result.success(likeService.likeBatch(entries)));
+    }
+
+    /**
+     * 检查当前用户是否已点赞该排行榜
+     * @param request 排行榜信息
+     */
+    @PostMapping("/check")
+    public Result<Boolean> check(@RequestBody LikeCheckDto request) {
+        return Result.success(likeService.checkLiked(request));
+    }
+
+    /**
+     * 点赞统计信息
+     */
+    @GetMapping("/stats")
+    public Result<Map<String, Object>> stats() {
+        return Result.success(likeService.getLikeStats());
     }
-} 
\ No newline at end of file
+}
@@ -1,11 +1,16 @@
 package com.example.superrankinglist.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.common.RankingETag;
 import com.example.superrankinglist.common.Result;
 import com.example.superrankinglist.dto.RankingListQueryDto;
 import com.example.superrankinglist.pojo.RankingItem;
 import com.example.superrankinglist.service.RankingListService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +19,7 @@ import org.slf4j.LoggerFactory;
  * 排行榜控制器
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/ranking")
 public class RankingListController {
 
@@ -24,17 +30,23 @@ public class RankingListController {
 
     /**
      * 查询排行榜
+     * 分页在前K名快照范围内时，直接返回已序列化（客户端支持时为gzip压缩）的响应体；
+     * If-None-Match与排行榜当前版本号对应的ETag一致时返回304
      * @param queryDto 查询参数
+     * @param acceptEncoding 请求头Accept-Encoding
+     * @param ifNoneMatch 请求头If-None-Match
      * @return 排行榜数据
      */
     @PostMapping("/list")
-    public Result<Page<RankingItem>> queryRankingList(@RequestBody RankingListQueryDto queryDto) {
+    public ResponseEntity<?> queryRankingList(@RequestBody RankingListQueryDto queryDto,
+                                              @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         // 参数验证
         if (queryDto == null) {
-            return Result.error("查询参数不能为空");
+            return ResponseEntity.ok(Result.error("查询参数不能为空"));
         }
         if (queryDto.getRankingListId() == null) {
-            return Result.error("排行榜ID不能为空");
+            return ResponseEntity.ok(Result.error("排行榜ID不能为空"));
         }
         if (queryDto.getPageNum() == null || queryDto.getPageNum() < 1) {
             queryDto.setPageNum(1);
@@ -47,21 +59,43 @@ public class RankingListController {
         }
         
         try {
+            CachedPage cachedPage = rankingListService.getCachedPage(queryDto);
+            if (cachedPage != null) {
+                if (RankingETag.matches(ifNoneMatch, cachedPage.getEtag())) {
+                    return RankingETag.notModified(cachedPage.getEtag());
+                }
+                return cachedPage.toResponse(acceptEncoding);
+            }
+            // 先读取版本号再查询数据，返回的数据不会比ETag对应的版本旧
+            long version = rankingListService.getVersion(queryDto.getRankingListId());
+            String etag = RankingETag.page(queryDto.getRankingListId(), version, queryDto.getPageNum(), queryDto.getPageSize());
+            if (RankingETag.matches(ifNoneMatch, etag)) {
+                return RankingETag.notModified(etag);
+            }
             Page<RankingItem> page = rankingListService.queryRankingList(queryDto);
-            return Result.success(page);
+            return ResponseEntity.ok().eTag(etag).body(Result.success(page));
         } catch (Exception e) {
-            return Result.error("查询排行榜失败：" + e.getMessage());
+            return ResponseEntity.ok(Result.error("查询排行榜失败：" + e.getMessage()));
         }
     }
 
+    /**
+     * 获取用户的排名和积分
+     * If-None-Match与排行榜当前版本号对应的ETag一致时返回304
+     */
     @GetMapping("/user/rank")
-    public Result<RankingItem> getUserRankAndScore(@RequestParam Long rankingListId, @RequestParam Long userId) {
+    public ResponseEntity<?> getUserRankAndScore(@RequestParam Long rankingListId, @RequestParam Long userId,
+                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
+            String etag = RankingETag.userRank(rankingListId, rankingListService.getVersion(rankingListId), userId);
+            if (RankingETag.matches(ifNoneMatch, etag)) {
+                return RankingETag.notModified(etag);
+            }
             RankingItem rankingItem = rankingListService.getUserRankAndScore(rankingListId, userId);
-            return Result.success(rankingItem);
+            return ResponseEntity.ok().eTag(etag).body(Result.success(rankingItem));
         } catch (Exception e) {
             log.error("获取用户排名失败", e);
-            return Result.error("获取用户排名失败");
+            return ResponseEntity.ok(Result.error("获取用户排名失败"));
         }
     }
 } 
\ No newline at end of file
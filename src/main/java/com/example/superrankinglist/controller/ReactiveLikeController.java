@@ -0,0 +1,94 @@
+package com.example.superrankinglist.controller;
+
+import com.example.superrankinglist.common.Result;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.dto.LikeBatchEntryDto;
+import com.example.superrankinglist.dto.LikeBatchResultDto;
+import com.example.superrankinglist.dto.LikeCheckDto;
+import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.service.LikeService;
+import com.example.superrankinglist.service.ReactiveLikeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 响应式点赞控制器
+ * spring.main.web-application-type为reactive时代替LikeController，接口路径、状态码和返回格式相同
+ */
+@RestController
+@RequestMapping("/api/likes")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveLikeController {
+
+    @Autowired
+    private ReactiveLikeService reactiveLikeService;
+
+    @Autowired
+    private LikeService likeService;
+
+    @Autowired
+    private RankingConfig rankingConfig;
+
+    /**
+     * 点赞
+     * withRank为true时返回点赞后的积分和排名；
+     * 启用异步点赞且不需要排名时，点赞入队后返回202，队列已满时返回429
+     * @param request 点赞请求
+     */
+    @PostMapping("/like")
+    public Mono<ResponseEntity<Result<?>>> like(@RequestBody LikeDto request) {
+        if (Boolean.TRUE.equals(request.getWithRank())) {
+            return reactiveLikeService.likeWithRank(request)
+                    .map(item -> ResponseEntity.ok(Result.success(item)));
+        }
+        if (likeService.isAsyncIngest()) {
+            return reactiveLikeService.submitLike(request).map(accepted -> accepted
+                    ? ResponseEntity.accepted().body(Result.success(true))
+                    : ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                            .body(Result.error(HttpStatus.TOO_MANY_REQUESTS.value(), "点赞请求过多，请稍后重试")));
+        }
+        return reactiveLikeService.like(request)
+                .map(liked -> ResponseEntity.ok(Result.success(liked)));
+    }
+
+    /**
+     * 批量点赞
+     * 只允许携带服务令牌的内部服务调用，否则返回403
+     * @param entries 点赞条目列表
+     * @param serviceToken 请求头X-Service-Token
+     */
+    @PostMapping("/batch")
+    public Mono<ResponseEntity<Result<List<LikeBatchResultDto>>>> likeBatch(
+            @RequestBody List<LikeBatchEntryDto> entries,
+            @RequestHeader(value = RankingConfig.Like.SERVICE_TOKEN_HEADER, required = false) String serviceToken) {
+        if (!rankingConfig.getLike().isTrustedService(serviceToken)) {
+            return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Result.error(HttpStatus.FORBIDDEN.value(), "只允许内部服务调用批量点赞接口")));
+        }
+        return reactiveLikeService.likeBatch(entries).map(results -> ResponseEntity.ok(Result.success(results)));
+    }
+
+    /**
+     * 检查当前用户是否已点赞该排行榜
+     * @param request 排行榜信息
+     */
+    @PostMapping("/check")
+    public Mono<Result<Boolean>> check(@RequestBody LikeCheckDto request) {
+        return reactiveLikeService.checkLiked(request).map(Result::success);
+    }
+
+    /**
+     * 点赞统计信息
+     */
+    @GetMapping("/stats")
+    public Result<Map<String, Object>> stats() {
+        return Result.success(likeService.getLikeStats());
+    }
+}
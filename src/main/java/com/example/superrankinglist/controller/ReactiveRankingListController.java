@@ -0,0 +1,102 @@
+package com.example.superrankinglist.controller;
+
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.common.RankingETag;
+import com.example.superrankinglist.common.Result;
+import com.example.superrankinglist.dto.RankingListQueryDto;
+import com.example.superrankinglist.service.ReactiveRankingListService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式排行榜控制器
+ * spring.main.web-application-type为reactive时代替RankingListController，接口路径和返回格式相同
+ */
+@RestController
+@RequestMapping("/api/ranking")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRankingListController {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveRankingListController.class);
+
+    @Autowired
+    private ReactiveRankingListService rankingListService;
+
+    /**
+     * 查询排行榜
+     * 分页在前K名快照范围内时，直接返回已序列化（客户端支持时为gzip压缩）的响应体；
+     * If-None-Match与排行榜当前版本号对应的ETag一致时返回304
+     * @param queryDto 查询参数
+     * @param acceptEncoding 请求头Accept-Encoding
+     * @param ifNoneMatch 请求头If-None-Match
+     * @return 排行榜数据
+     */
+    @PostMapping("/list")
+    public Mono<ResponseEntity<?>> queryRankingList(@RequestBody RankingListQueryDto queryDto,
+                                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        // 参数验证
+        if (queryDto.getRankingListId() == null) {
+            return Mono.just(ResponseEntity.ok(Result.error("排行榜ID不能为空")));
+        }
+        if (queryDto.getPageNum() == null || queryDto.getPageNum() < 1) {
+            queryDto.setPageNum(1);
+        }
+        if (queryDto.getPageSize() == null || queryDto.getPageSize() < 1) {
+            queryDto.setPageSize(10);
+        }
+        if (queryDto.getSortType() == null) {
+            queryDto.setSortType(1);
+        }
+
+        CachedPage cachedPage = rankingListService.getCachedPage(queryDto);
+        if (cachedPage != null) {
+            if (RankingETag.matches(ifNoneMatch, cachedPage.getEtag())) {
+                return Mono.just(RankingETag.notModified(cachedPage.getEtag()));
+            }
+            return Mono.just(cachedPage.toResponse(acceptEncoding));
+        }
+        // 先读取版本号再查询数据，返回的数据不会比ETag对应的版本旧
+        return rankingListService.getVersion(queryDto.getRankingListId())
+                .flatMap(version -> {
+                    String etag = RankingETag.page(queryDto.getRankingListId(), version,
+                            queryDto.getPageNum(), queryDto.getPageSize());
+                    if (RankingETag.matches(ifNoneMatch, etag)) {
+                        return Mono.<ResponseEntity<?>>just(RankingETag.notModified(etag));
+                    }
+                    return rankingListService.queryRankingList(queryDto)
+                            .<ResponseEntity<?>>map(page -> ResponseEntity.ok().eTag(etag).body(Result.success(page)));
+                })
+                .onErrorResume(e -> Mono.just(ResponseEntity.ok(Result.error("查询排行榜失败：" + e.getMessage()))));
+    }
+
+    /**
+     * 获取用户的排名和积分
+     * If-None-Match与排行榜当前版本号对应的ETag一致时返回304
+     */
+    @GetMapping("/user/rank")
+    public Mono<ResponseEntity<?>> getUserRankAndScore(@RequestParam Long rankingListId, @RequestParam Long userId,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return rankingListService.getVersion(rankingListId)
+                .flatMap(version -> {
+                    String etag = RankingETag.userRank(rankingListId, version, userId);
+                    if (RankingETag.matches(ifNoneMatch, etag)) {
+                        return Mono.<ResponseEntity<?>>just(RankingETag.notModified(etag));
+                    }
+                    return rankingListService.getUserRankAndScore(rankingListId, userId)
+                            .map(Result::success)
+                            .defaultIfEmpty(Result.success(null))
+                            .<ResponseEntity<?>>map(result -> ResponseEntity.ok().eTag(etag).body(result));
+                })
+                .onErrorResume(e -> {
+                    log.error("获取用户排名失败", e);
+                    return Mono.just(ResponseEntity.ok(Result.error("获取用户排名失败")));
+                });
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.superrankinglist.dto;
+
+import lombok.Data;
+
+/**
+ * 批量点赞条目DTO
+ */
+@Data
+public class LikeBatchEntryDto {
+    /**
+     * 排行榜ID
+     */
+    private Long rankingListId;
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 积分增量，必须大于0
+     */
+    private Long delta;
+}
@@ -0,0 +1,34 @@
+package com.example.superrankinglist.dto;
+
+import lombok.Data;
+
+/**
+ * 批量点赞单条结果DTO，与请求条目按下标一一对应
+ */
+@Data
+public class LikeBatchResultDto {
+    /**
+     * 排行榜ID
+     */
+    private Long rankingListId;
+
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 是否成功
+     */
+    private boolean success;
+
+    /**
+     * 成功时为用户的最新积分（点赞数）
+     */
+    private Double score;
+
+    /**
+     * 失败原因
+     */
+    private String message;
+}
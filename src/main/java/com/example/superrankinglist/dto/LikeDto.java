@@ -11,4 +11,9 @@ public class LikeDto {
      * 排行榜ID
      */
     private Long rankingListId;
+
+    /**
+     * 是否在响应中返回点赞后的积分和排名
+     */
+    private Boolean withRank = false;
 } 
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.example.superrankinglist.interceptor;
+
+import com.example.superrankinglist.utils.JwtUtil;
+import com.example.superrankinglist.utils.ReactiveUserContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式用户上下文过滤器
+ * 响应式接口中代替UserContextInterceptor，将token中的用户ID写入Reactor上下文
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class UserContextWebFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserContextWebFilter.class);
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // 从请求头中获取token
+        String token = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (token == null || !token.startsWith("Bearer ")) {
+            logger.debug("No token found in request");
+            return chain.filter(exchange);
+        }
+
+        token = token.substring(7);
+        if (!jwtUtil.validateToken(token)) {
+            logger.warn("Invalid token");
+            return chain.filter(exchange);
+        }
+        Long userId = jwtUtil.getUserIdFromToken(token);
+        if (userId == null) {
+            return chain.filter(exchange);
+        }
+        logger.debug("Set userId: {} to Reactor context", userId);
+        return chain.filter(exchange).contextWrite(ReactiveUserContext.withUserId(userId));
+    }
+}
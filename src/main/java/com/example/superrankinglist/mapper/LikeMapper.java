@@ -1,7 +1,11 @@
 package com.example.superrankinglist.mapper;
 
+import com.example.superrankinglist.pojo.LikeRecord;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.List;
 
 /**
  * 点赞Mapper接口
@@ -16,6 +20,13 @@ public interface LikeMapper {
      */
     int insertLike(@Param("userId") Long userId, @Param("rankingListId") Long rankingListId);
 
+    /**
+     * 批量添加点赞记录，已存在的记录只更新update_time
+     * @param records 点赞记录
+     * @return 影响行数
+     */
+    int insertLikes(@Param("records") List<LikeRecord> records);
+
     /**
      * 删除点赞记录
      * @param userId 用户ID
@@ -38,4 +49,11 @@ public interface LikeMapper {
      * @return 点赞记录数
      */
     int checkLiked(@Param("userId") Long userId, @Param("rankingListId") Long rankingListId);
-} 
\ No newline at end of file
+
+    /**
+     * 流式读取所有点赞记录，用于回填Redis中的点赞用户位图
+     * 需要在事务中调用，游标在事务结束时关闭
+     * @return 点赞记录游标
+     */
+    Cursor<LikeRecord> streamLikeRecords();
+}
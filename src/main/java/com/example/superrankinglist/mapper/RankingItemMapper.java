@@ -2,7 +2,9 @@ package com.example.superrankinglist.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.example.superrankinglist.pojo.RankingItem;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Result;
 import org.apache.ibatis.annotations.Results;
 import org.apache.ibatis.annotations.Select;
@@ -40,4 +42,18 @@ public interface RankingItemMapper extends BaseMapper<RankingItem> {
         @Result(property = "user.score", column = "user_score")
     })
     List<RankingItem> selectWithUserByRankingListId(Long rankingListId);
-} 
\ No newline at end of file
+
+    /**
+     * 批量写入排行榜项目，已存在的记录更新分数和排名
+     * @param items 排行榜项目列表
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO ranking_item (ranking_list_id, user_id, score, ranking) VALUES " +
+            "<foreach collection='items' item='item' separator=','>" +
+            "(#{item.rankingListId}, #{item.userId}, #{item.score}, #{item.ranking})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE score = VALUES(score), ranking = VALUES(ranking)" +
+            "</script>")
+    int upsertScores(@Param("items") List<RankingItem> items);
+}
@@ -0,0 +1,19 @@
+package com.example.superrankinglist.pojo;
+
+import lombok.Data;
+
+/**
+ * 点赞记录实体类
+ */
+@Data
+public class LikeRecord {
+    /**
+     * 用户ID
+     */
+    private Long userId;
+
+    /**
+     * 排行榜ID
+     */
+    private Long rankingListId;
+}
@@ -1,6 +1,7 @@
 package com.example.superrankinglist.pojo;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -40,6 +41,13 @@ public class RankingItem {
      */
     private Long ranking;
 
+    /**
+     * 排名的误差上界
+     * 精确排名为0，由线段树估算的粗略排名为估算所在区间内的用户数量
+     */
+    @TableField(exist = false)
+    private Long rankErrorBound;
+
     /**
      * 记录创建时间
      */
@@ -0,0 +1,153 @@
+package com.example.superrankinglist.service;
+
+import com.example.superrankinglist.common.LikeEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点用户点赞本地合并
+ * 统计每个用户最近一秒内的点赞次数，超过阈值后该用户的点赞先在本地累加，
+ * 由调用方定期取出并以一次积分更新写入Redis，避免同一个zset成员和线段树区间被Redis串行地反复更新
+ */
+public class HotLikeAggregator {
+
+    /**
+     * 统计点赞速率的窗口长度（毫秒）
+     */
+    private static final long RATE_WINDOW_MS = 1000;
+
+    /**
+     * 每秒点赞次数超过该值的用户视为热点用户
+     */
+    private final long hotThreshold;
+
+    private final Map<String, HotUser> users = new ConcurrentHashMap<>();
+
+    /**
+     * 被合并（未直接写入Redis）的点赞次数
+     */
+    private final LongAdder coalescedLikes = new LongAdder();
+
+    /**
+     * 合并后实际写入Redis的积分更新次数
+     */
+    private final LongAdder flushedUpdates = new LongAdder();
+
+    public HotLikeAggregator(long hotThreshold) {
+        this.hotThreshold = hotThreshold;
+    }
+
+    /**
+     * 记录一次点赞
+     * @param timestamp 点赞时间（毫秒）
+     * @return true表示点赞已在本地合并，调用方无需写入Redis；false表示调用方应直接写入
+     */
+    public boolean offer(Long rankingListId, Long userId, long timestamp) {
+        String key = rankingListId + ":" + userId;
+        while (true) {
+            HotUser user = users.computeIfAbsent(key, k -> new HotUser(rankingListId, userId));
+            synchronized (user) {
+                // 已被drain移除的条目不再使用，重新获取
+                if (user.retired) {
+                    continue;
+                }
+                if (timestamp - user.windowStart >= RATE_WINDOW_MS) {
+                    user.windowStart = timestamp;
+                    user.windowCount = 0;
+                }
+                user.windowCount++;
+                if (user.windowCount <= hotThreshold && user.pending == 0) {
+                    return false;
+                }
+                user.pending++;
+                user.lastTimestamp = Math.max(user.lastTimestamp, timestamp);
+                coalescedLikes.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 取出所有已合并的点赞，并清理速率窗口已过期的用户
+     * @param now 当前时间（毫秒）
+     * @return 每个热点用户一条合并后的积分更新，积分小数部分取最后一次点赞的时间，与逐次写入时的结果一致
+     */
+    public List<LikeEvent> drain(long now) {
+        List<LikeEvent> pending = new ArrayList<>();
+        Iterator<HotUser> iterator = users.values().iterator();
+        while (iterator.hasNext()) {
+            HotUser user = iterator.next();
+            synchronized (user) {
+                if (user.pending > 0) {
+                    pending.add(new LikeEvent(user.rankingListId, user.userId, user.pending, user.lastTimestamp));
+                    user.pending = 0;
+                } else if (now - user.windowStart >= RATE_WINDOW_MS) {
+                    user.retired = true;
+                    iterator.remove();
+                }
+            }
+        }
+        flushedUpdates.add(pending.size());
+        return pending;
+    }
+
+    /**
+     * 放回写入Redis失败的合并更新，与之后合并的点赞一起在下次drain时重新写入
+     * 放回后该用户之后的点赞都在本地合并，不会先于放回的点赞写入Redis
+     */
+    public void requeue(LikeEvent event) {
+        String key = event.getRankingListId() + ":" + event.getUserId();
+        while (true) {
+            HotUser user = users.computeIfAbsent(key, k -> new HotUser(event.getRankingListId(), event.getUserId()));
+            synchronized (user) {
+                if (user.retired) {
+                    continue;
+                }
+                user.pending += event.getIncrement();
+                user.lastTimestamp = Math.max(user.lastTimestamp, event.getTimestamp());
+                flushedUpdates.decrement();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 获取合并统计信息
+     */
+    public Map<String, Object> getStats() {
+        long coalesced = coalescedLikes.sum();
+        long flushed = flushedUpdates.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hotThreshold", hotThreshold);
+        stats.put("trackedUsers", users.size());
+        stats.put("coalescedLikes", coalesced);
+        stats.put("flushedUpdates", flushed);
+        // 合并后节省的Redis写入次数
+        stats.put("savedWrites", coalesced - flushed);
+        return stats;
+    }
+
+    /**
+     * 单个用户的点赞速率和未写入的点赞，所有字段由对象锁保护
+     */
+    private static class HotUser {
+        private final Long rankingListId;
+        private final Long userId;
+        private long windowStart;
+        private long windowCount;
+        private long pending;
+        private long lastTimestamp;
+        private boolean retired;
+
+        HotUser(Long rankingListId, Long userId) {
+            this.rankingListId = rankingListId;
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.superrankinglist.service;
+
+import com.example.superrankinglist.common.LikeEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 异步点赞队列
+ * 按排行榜ID将点赞分配到固定的分片，每个分片是一个有界队列和唯一的消费线程，
+ * 同一排行榜（也就是同一用户）的点赞按入队顺序写入；队列满时拒绝入队，由调用方返回429。
+ * 确定未写入的点赞由消费线程按指数退避重试，重试期间该分片不再取出新的点赞，队列满后新的点赞被拒绝；
+ * 写入结果未知的点赞由写入方判断，不交给队列重试，避免重复计数
+ */
+@Slf4j
+public class LikeIngestQueue {
+
+    /**
+     * 消费线程等待新点赞的最长时间（毫秒），用于及时响应关闭
+     */
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final List<BlockingQueue<LikeEvent>> shards;
+    private final Thread[] consumers;
+    private final int maxBatchSize;
+    private final long retryBackoffMs;
+    private final long maxRetryBackoffMs;
+    private final Function<List<LikeEvent>, List<LikeEvent>> handler;
+    private volatile boolean closed;
+
+    /**
+     * 重试的截止时间（毫秒），关闭前不限制
+     */
+    private volatile long retryDeadline = Long.MAX_VALUE;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param shardCount 分片数量，即消费线程数量
+     * @param capacity 每个分片的队列容量
+     * @param maxBatchSize 消费线程每次取出并写入的最大点赞数量
+     * @param retryBackoffMs 首次重试前的等待时间（毫秒），之后每次加倍
+     * @param maxRetryBackoffMs 重试等待时间的上限（毫秒）
+     * @param handler 批量写入点赞，在消费线程中调用，返回确定未写入、需要重试的点赞；
+     *                只能在整批都未写入时抛出异常，抛出异常时整批重试
+     */
+    public LikeIngestQueue(int shardCount, int capacity, int maxBatchSize, long retryBackoffMs, long maxRetryBackoffMs,
+                           Function<List<LikeEvent>, List<LikeEvent>> handler) {
+        if (shardCount < 1 || capacity < 1 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("分片数量、队列容量和批量大小必须大于0");
+        }
+        this.shards = new ArrayList<>(shardCount);
+        this.consumers = new Thread[shardCount];
+        this.maxBatchSize = maxBatchSize;
+        this.retryBackoffMs = Math.max(1, retryBackoffMs);
+        this.maxRetryBackoffMs = Math.max(this.retryBackoffMs, maxRetryBackoffMs);
+        this.handler = handler;
+        for (int i = 0; i < shardCount; i++) {
+            BlockingQueue<LikeEvent> shard = new ArrayBlockingQueue<>(capacity);
+            shards.add(shard);
+            consumers[i] = new Thread(() -> consume(shard), "like-ingest-" + i);
+            consumers[i].setDaemon(true);
+            consumers[i].start();
+        }
+    }
+
+    /**
+     * 点赞入队
+     * @return false表示队列已满或已关闭，点赞未被接受
+     */
+    public boolean offer(LikeEvent event) {
+        if (closed) {
+            rejected.increment();
+            return false;
+        }
+        int shard = Math.floorMod(event.getRankingListId().hashCode(), shards.size());
+        if (!shards.get(shard).offer(event)) {
+            rejected.increment();
+            return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private void consume(BlockingQueue<LikeEvent> shard) {
+        List<LikeEvent> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            try {
+                LikeEvent first = shard.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // 关闭后队列已为空，所有点赞都已写入
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                shard.drainTo(batch, maxBatchSize - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 写入一批点赞，确定未写入的点赞按指数退避重试，直到全部写入；关闭后超过截止时间仍未写入的点赞被丢弃
+     */
+    private void apply(List<LikeEvent> batch) throws InterruptedException {
+        List<LikeEvent> pending = batch;
+        long backoffMs = retryBackoffMs;
+        while (true) {
+            List<LikeEvent> failed;
+            try {
+                failed = handler.apply(pending);
+            } catch (Exception e) {
+                // 写入方只在整批都未写入时抛出异常
+                log.warn("异步点赞写入失败: {}", e.getMessage(), e);
+                failed = pending;
+            }
+            applied.add(pending.size() - failed.size());
+            if (failed.isEmpty()) {
+                return;
+            }
+            if (System.currentTimeMillis() + backoffMs > retryDeadline) {
+                dropped.add(failed.size());
+                log.error("异步点赞队列关闭前未能写入，丢弃 {} 条点赞", failed.size());
+                return;
+            }
+            retried.add(failed.size());
+            log.warn("{} 条点赞写入失败，{} 毫秒后重试", failed.size(), backoffMs);
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                dropped.add(failed.size());
+                log.error("异步点赞重试被中断，丢弃 {} 条点赞", failed.size());
+                throw e;
+            }
+            backoffMs = Math.min(backoffMs * 2, maxRetryBackoffMs);
+            pending = failed;
+        }
+    }
+
+    /**
+     * 停止接受新的点赞，并等待消费线程写完队列中剩余的点赞
+     * @param timeoutMs 最长等待时间（毫秒）
+     */
+    public void shutdown(long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        // 关闭后重试不超过等待时间，消费线程到期后放弃重试并退出
+        retryDeadline = deadline;
+        closed = true;
+        for (Thread consumer : consumers) {
+            try {
+                consumer.join(Math.max(1, deadline - System.currentTimeMillis()));
+                if (consumer.isAlive()) {
+                    // 超时后仍在重试的消费线程不再等待下次重试
+                    consumer.interrupt();
+                    consumer.join(POLL_TIMEOUT_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // 消费线程退出后仍可能有关闭前刚入队的点赞，由当前线程写入
+        for (BlockingQueue<LikeEvent> shard : shards) {
+            List<LikeEvent> batch = new ArrayList<>(maxBatchSize);
+            while (shard.drainTo(batch, maxBatchSize) > 0) {
+                try {
+                    apply(batch);
+                } catch (InterruptedException e) {
+                    // 未写入的点赞已在重试时计入丢弃
+                    Thread.currentThread().interrupt();
+                }
+                batch.clear();
+            }
+        }
+        log.info("异步点赞队列已关闭，累计写入 {} 条点赞", applied.sum());
+    }
+
+    /**
+     * 获取队列统计信息
+     */
+    public Map<String, Object> getStats() {
+        int queued = 0;
+        for (BlockingQueue<LikeEvent> shard : shards) {
+            queued += shard.size();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("shards", shards.size());
+        stats.put("queued", queued);
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("applied", applied.sum());
+        stats.put("retried", retried.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+}
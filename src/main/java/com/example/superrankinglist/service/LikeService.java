@@ -1,8 +1,14 @@
 package com.example.superrankinglist.service;
 
+import com.example.superrankinglist.dto.LikeBatchEntryDto;
+import com.example.superrankinglist.dto.LikeBatchResultDto;
 import com.example.superrankinglist.dto.LikeCheckDto;
 import com.example.superrankinglist.dto.LikeCountDto;
 import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.pojo.RankingItem;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * 点赞服务接口
@@ -11,9 +17,51 @@ public interface LikeService {
     /**
      * 点赞
      * @param likeDto 点赞信息
-     * @return 是否点赞成功
+     * @return 是否点赞成功，启用去重且用户已点赞过时返回false
      */
     boolean like(LikeDto likeDto);
 
+    /**
+     * 检查用户是否已点赞，读取Redis中的点赞用户位图
+     * @param likeCheckDto 排行榜信息
+     * @return 是否已点赞
+     */
+    boolean checkLiked(LikeCheckDto likeCheckDto);
+
+    /**
+     * 点赞，并返回点赞后的积分和排名
+     * 积分更新和排名查询在同一次脚本调用中完成
+     * @param likeDto 点赞信息
+     * @return 点赞用户的最新积分和排名
+     */
+    RankingItem likeWithRank(LikeDto likeDto);
+
+    /**
+     * 批量点赞
+     * 条目按排行榜分组后通过一次Redis管道执行，单条失败不影响其他条目
+     * @param entries 点赞条目列表
+     * @return 每个条目的处理结果，与请求条目按下标一一对应
+     */
+    List<LikeBatchResultDto> likeBatch(List<LikeBatchEntryDto> entries);
+
+    /**
+     * 异步点赞：校验后放入队列立即返回，由消费线程批量写入Redis
+     * 未启用异步点赞时同步写入
+     * @param likeDto 点赞信息
+     * @return false表示队列已满，点赞未被接受
+     */
+    boolean submitLike(LikeDto likeDto);
+
+    /**
+     * 是否启用了异步点赞
+     */
+    boolean isAsyncIngest();
+
+    /**
+     * 获取点赞统计信息，包括热点用户合并的点赞次数、节省的写入次数和异步队列状态
+     * @return 统计信息
+     */
+    Map<String, Object> getLikeStats();
+
 
 } 
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.example.superrankinglist.service;
+
+import com.example.superrankinglist.dto.LikeBatchEntryDto;
+import com.example.superrankinglist.dto.LikeBatchResultDto;
+import com.example.superrankinglist.dto.LikeCheckDto;
+import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.pojo.RankingItem;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * 响应式点赞服务接口
+ * 与LikeService对应，用户ID从Reactor上下文中获取，Redis命令不占用请求线程
+ */
+public interface ReactiveLikeService {
+    /**
+     * 点赞
+     * @param likeDto 点赞信息
+     * @return 是否点赞成功，启用去重且用户已点赞过时返回false
+     */
+    Mono<Boolean> like(LikeDto likeDto);
+
+    /**
+     * 检查用户是否已点赞
+     * @param likeCheckDto 排行榜信息
+     * @return 是否已点赞
+     */
+    Mono<Boolean> checkLiked(LikeCheckDto likeCheckDto);
+
+    /**
+     * 点赞，并返回点赞后的积分和排名
+     * @param likeDto 点赞信息
+     * @return 点赞用户的最新积分和排名
+     */
+    Mono<RankingItem> likeWithRank(LikeDto likeDto);
+
+    /**
+     * 批量点赞
+     * @param entries 点赞条目列表
+     * @return 每个条目的处理结果，与请求条目按下标一一对应
+     */
+    Mono<List<LikeBatchResultDto>> likeBatch(List<LikeBatchEntryDto> entries);
+
+    /**
+     * 异步点赞，未启用异步点赞时直接写入
+     * @param likeDto 点赞信息
+     * @return false表示队列已满，点赞未被接受
+     */
+    Mono<Boolean> submitLike(LikeDto likeDto);
+}
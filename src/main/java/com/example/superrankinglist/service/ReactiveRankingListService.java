@@ -0,0 +1,42 @@
+package com.example.superrankinglist.service;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.dto.RankingListQueryDto;
+import com.example.superrankinglist.pojo.RankingItem;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式排行榜服务接口
+ * 与RankingListService对应，Redis命令不占用请求线程
+ */
+public interface ReactiveRankingListService {
+    /**
+     * 查询排行榜
+     * @param queryDto 查询参数
+     * @return 排行榜分页数据
+     */
+    Mono<Page<RankingItem>> queryRankingList(RankingListQueryDto queryDto);
+
+    /**
+     * 获取前K名快照中已序列化的分页响应体，不访问Redis
+     * @param queryDto 查询参数
+     * @return 快照不能覆盖该分页时返回null
+     */
+    CachedPage getCachedPage(RankingListQueryDto queryDto);
+
+    /**
+     * 获取排行榜的版本号，排行榜的积分变化时加1，用于生成ETag
+     * @param rankingListId 排行榜ID
+     * @return 版本号，有前K名快照时为快照的版本号，否则从Redis读取
+     */
+    Mono<Long> getVersion(Long rankingListId);
+
+    /**
+     * 获取用户的排名和积分
+     * @param rankingListId 排行榜ID
+     * @param userId 用户ID
+     * @return 包含用户排名和积分的对象，用户不在排行榜中时为空
+     */
+    Mono<RankingItem> getUserRankAndScore(Long rankingListId, Long userId);
+}
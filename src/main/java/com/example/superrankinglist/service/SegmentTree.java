@@ -1,41 +1,149 @@
 package com.example.superrankinglist.service;
 
-import com.example.superrankinglist.common.SegmentTreeNode;
+import com.example.superrankinglist.common.FuzzyRank;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
-
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 线段树
+ * 采用隐式数组布局：节点按堆序编号，根节点为1，节点i的左右子节点分别为2i和2i+1，
+ * 叶子区间编号为 [leafCount, 2 * leafCount)，叶子区间内的子区间编号排在其后。
+ * 区间按点赞数划分，有序集合中的分数先通过ScoreCodec解码为点赞数再传入，区间边界和排名计算只使用整数运算，
+ * 内存模式下的排名查询和积分更新不产生对象分配
+ */
+@Slf4j
 public class SegmentTree {
-    private SegmentTreeNode root;
     private final String redisKey;  // Redis Hash的key
     private final RedisTemplate<String, String> redisTemplate;
-    private static final int DECIMAL_PLACES = 4;  // 小数位数
+    private static final int DECIMAL_PLACES = 4;  // 旧格式区间标识的小数位数
+
+    /**
+     * 在Redis中完成排名计算的Lua脚本，一次EVALSHA即可得到粗略排名和误差上界
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> GET_SEGMENT_RANK_SCRIPT = new DefaultRedisScript<>();
+
+    /**
+     * 批量更新区间计数的Lua脚本，一次调用完成所有区间的HINCRBY
+     */
+    private static final DefaultRedisScript<Long> UPDATE_SEGMENT_SCRIPT = new DefaultRedisScript<>();
+
+    /**
+     * 将旧格式区间标识迁移为节点编号的Lua脚本，读取、删除和写入在一次调用中完成
+     */
+    private static final DefaultRedisScript<Long> MIGRATE_SEGMENT_FIELDS_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        GET_SEGMENT_RANK_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/get_segment_rank.lua")));
+        GET_SEGMENT_RANK_SCRIPT.setResultType(List.class);
+        UPDATE_SEGMENT_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/update_segment.lua")));
+        UPDATE_SEGMENT_SCRIPT.setResultType(Long.class);
+        MIGRATE_SEGMENT_FIELDS_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/migrate_segment_fields.lua")));
+        MIGRATE_SEGMENT_FIELDS_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 内存模式：区间计数保存在本地数组中，Redis仅作为持久化存储
+     */
+    private final boolean inMemory;
+    private int leafCount;                    // 叶子区间数量
+    private long maxScore;                    // 最大分数
+    private long[] leafLowers;                // 各叶子区间的下界
+    private long[] lowers;                    // 各节点区间的下界（点赞数，包含）
+    private long[] uppers;                    // 各节点区间的上界（点赞数，包含）
+    private String[] fields;                  // 各节点在Redis Hash中的field，即节点编号的十进制字符串
+    private List<String> layoutArgs;          // 在Lua脚本中定位区间所需的参数
+    private AtomicLongArray counts;           // 内存模式下各节点的用户数量
+    private LongAdder[] pendingDeltas;        // 尚未回写Redis的计数变化，按节点编号分别累加
+
+    /**
+     * 写缓冲：Redis模式下计数变化先累加到pendingDeltas，再由flush批量回写；内存模式始终缓冲
+     */
+    private boolean writeBehind;
+    private long flushThreshold;              // 缓冲的积分更新次数达到该值时立即回写，0表示只按间隔回写
+    private long maxStalenessNanos;           // Redis模式下查询排名前允许的最大未回写时长，0表示不限制
+    private final LongAdder pendingUpdates = new LongAdder();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long lastFlushNanos = System.nanoTime();
+    private volatile boolean retired;         // 已移出注册表，不再被定时回写
+
+    /**
+     * 叶子区间内的子区间（sketch）数量，0表示不启用
+     * 每个叶子区间被等分为若干子区间并分别计数，叶子区间内的排名由子区间计数估算，
+     * 误差上界从叶子区间的用户数量缩小为所在子区间的用户数量。
+     * 子区间节点以堆序编号排在线段树节点之后：第k个（从0开始）叶子区间的第b个子区间编号为 2 * leafCount + k * sketchBuckets + b
+     */
+    private final int sketchBuckets;
+
+    /**
+     * 记录子区间数量的field，用于判断Redis中已有的计数是否与当前配置匹配
+     */
+    public static final String SKETCH_BUCKETS_FIELD = "sketchBuckets";
 
     public SegmentTree(String redisKey, RedisTemplate<String, String> redisTemplate) {
+        this(redisKey, redisTemplate, false);
+    }
+
+    public SegmentTree(String redisKey, RedisTemplate<String, String> redisTemplate, boolean inMemory) {
+        this(redisKey, redisTemplate, inMemory, 0);
+    }
+
+    public SegmentTree(String redisKey, RedisTemplate<String, String> redisTemplate, boolean inMemory, int sketchBuckets) {
+        if (sketchBuckets == 1 || sketchBuckets < 0) {
+            throw new IllegalArgumentException("sketchBuckets must be 0 or at least 2");
+        }
         this.redisKey = redisKey;
         this.redisTemplate = redisTemplate;
+        this.inMemory = inMemory;
+        this.sketchBuckets = sketchBuckets;
+    }
+
+    /**
+     * 配置写缓冲，需要在构建或加载线段树之前调用
+     * @param writeBehind Redis模式下是否缓冲计数变化
+     * @param flushThreshold 缓冲的积分更新次数达到该值时立即回写，0表示只按间隔回写
+     * @param maxStalenessMs Redis模式下查询排名前允许的最大未回写时长（毫秒），0表示不限制
+     */
+    public void setWriteBehind(boolean writeBehind, long flushThreshold, long maxStalenessMs) {
+        this.writeBehind = writeBehind;
+        this.flushThreshold = flushThreshold;
+        this.maxStalenessNanos = maxStalenessMs * 1_000_000L;
+    }
+
+    /**
+     * 区间计数的变化是否先在本地缓冲，再批量回写Redis
+     */
+    public boolean isBuffered() {
+        return inMemory || writeBehind;
     }
 
     /**
      * 构建线段树
      * @param minScore 最小积分
      * @param maxScore 最大积分
+     * @param segCount 叶子区间数量，必须是2的幂次方
      */
-    public void buildTree(double minScore, double maxScore) {
+    public void buildTree(double minScore, double maxScore, int segCount) {
         // 确保边界是整数
-        minScore = Math.floor(minScore);
-        maxScore = Math.floor(maxScore);
-
-        // 计算区间数量（确保是2的幂）
-        int segmentCount = calculateSegmentCount(minScore, maxScore);
-        buildTreeReal((long) maxScore,128);
-        initializeRedisCounts();
+        buildTreeReal((long) Math.floor(maxScore), segCount);
     }
 
     /**
@@ -70,119 +178,308 @@ public class SegmentTree {
         }
 
         // 构建线段树
-        root = buildSegmentTree(maxScore, segCount);
+        buildSegmentTree(maxScore, segCount);
         initializeRedisCounts();
     }
 
     /**
-     * 检查是否为2的幂次方
+     * 加载已存在的线段树
+     * 只构建树结构，不重置Redis中已有的区间计数；内存模式下通过一次HGETALL加载计数
+     * @param minScore 最小积分
+     * @param maxScore 最大积分
+     * @param segCount 叶子区间数量，需要与构建时一致
      */
-    private boolean isPowerOfTwo(int n) {
-        return n > 0 && (n & (n - 1)) == 0;
+    public void loadTree(double minScore, double maxScore, int segCount) {
+        long max = (long) Math.floor(maxScore);
+        buildSegmentTree(max, segCount);
+        migrateLegacyFields();
+        if (inMemory) {
+            hydrateCounts();
+        }
     }
 
-    private SegmentTreeNode buildSegmentTree(long maxScore, long segCount) {
-        // 计算每个分段的长度
-        long segLen = maxScore / segCount;
-        if (maxScore % segCount != 0) {
-            segLen++;
+    /**
+     * 按指定的叶子区间边界构建线段树
+     * @param leafLowers 各叶子区间的下界，严格递增，首个下界为1，数量必须是2的幂次方
+     * @param maxScore 最大分数，即最后一个叶子区间的上界
+     */
+    public void buildTree(long[] leafLowers, long maxScore) {
+        if (!isPowerOfTwo(leafLowers.length)) {
+            throw new IllegalArgumentException("leaf count must be a power of 2");
         }
+        buildSegmentTree(leafLowers, maxScore);
+        initializeRedisCounts();
+    }
 
-        List<SegmentTreeNode> parentLayerNodes = new ArrayList<>();
-        List<SegmentTreeNode> currentLayerNodes = new ArrayList<>();
+    /**
+     * 按指定的叶子区间边界加载已存在的线段树，不重置Redis中已有的区间计数
+     * @param leafLowers 各叶子区间的下界
+     * @param maxScore 最大分数
+     */
+    public void loadTree(long[] leafLowers, long maxScore) {
+        if (!isPowerOfTwo(leafLowers.length)) {
+            throw new IllegalArgumentException("leaf count must be a power of 2");
+        }
+        buildSegmentTree(leafLowers, maxScore);
+        migrateLegacyFields();
+        if (inMemory) {
+            hydrateCounts();
+        }
+    }
 
-        // 创建各个分段，保存到currentLayerNodes数组中
-        for (long i = 1; i <= maxScore; i += segLen) {
-            currentLayerNodes.add(new SegmentTreeNode(
-                    i,
-                    Math.min(i + segLen - 1, maxScore)
-            ));
-        }
-
-        // 循环构建完整的线段树
-        while (currentLayerNodes.size() >= 2) {
-            // 取出前两个节点
-            SegmentTreeNode leftNode = currentLayerNodes.get(0);
-            SegmentTreeNode rightNode = currentLayerNodes.get(1);
-            currentLayerNodes = currentLayerNodes.subList(2, currentLayerNodes.size());
-
-            // 创建父节点，合并数据区间
-            SegmentTreeNode parentNode = new SegmentTreeNode(
-                    leftNode.getLower(),
-                    rightNode.getUpper()
-            );
-            parentNode.setLeft(leftNode);
-            parentNode.setRight(rightNode);
-
-            // 将父节点添加到parentLayerNodes数组中
-            parentLayerNodes.add(parentNode);
-
-            // 如果currentLayerNodes为空，则说明某层节点已全部构建完成，需要到上一层继续构建
-            if (currentLayerNodes.isEmpty()) {
-                currentLayerNodes = parentLayerNodes;
-                parentLayerNodes = new ArrayList<>();
+    /**
+     * 根据积分分布计算等深（equi-depth）的叶子区间边界
+     * 每个叶子区间内的用户数量大致相同，点赞数相同的用户不会被拆分到不同区间；
+     * 分位点不足segCount个时，继续拆分最宽的区间
+     * @param likes 排行榜中所有用户的点赞数
+     * @param segCount 叶子区间数量，必须是2的幂次方
+     * @param maxScore 最大分数
+     * @return 各叶子区间的下界
+     */
+    public static long[] computeEquiDepthLeafLowers(long[] likes, int segCount, long maxScore) {
+        long[] sorted = likes.clone();
+        Arrays.sort(sorted);
+
+        TreeSet<Long> lowers = new TreeSet<>();
+        lowers.add(1L);
+        for (int k = 1; k < segCount && sorted.length > 0; k++) {
+            int idx = (int) ((long) k * sorted.length / segCount);
+            long boundary = sorted[Math.min(idx, sorted.length - 1)];
+            if (boundary > 1 && boundary <= maxScore) {
+                lowers.add(boundary);
+            }
+        }
+
+        // 分位点数量不足时，拆分最宽的区间
+        while (lowers.size() < segCount) {
+            long widestLower = -1;
+            long widestLength = 1;
+            Long previous = null;
+            for (Long lower : lowers) {
+                if (previous != null && lower - previous > widestLength) {
+                    widestLower = previous;
+                    widestLength = lower - previous;
+                }
+                previous = lower;
+            }
+            if (maxScore - previous + 1 > widestLength) {
+                widestLower = previous;
+                widestLength = maxScore - previous + 1;
+            }
+            if (widestLower < 0) {
+                throw new IllegalArgumentException("maxScore too small for segCount");
             }
+            lowers.add(widestLower + widestLength / 2);
         }
 
-        // 最终currentLayerNodes的首个节点是根节点
-        return currentLayerNodes.get(0);
+        return lowers.stream().mapToLong(Long::longValue).toArray();
     }
 
+    /**
+     * 获取各叶子区间的下界
+     */
+    public long[] getLeafLowers() {
+        return leafLowers.clone();
+    }
+
+    public String getRedisKey() {
+        return redisKey;
+    }
 
     /**
-     * 计算区间数量
-     * 确保区间数量是2的幂
+     * 获取在Lua脚本中定位积分所在区间所需的参数：
+     * 叶子区间数量、每个叶子区间内的子区间数量、最大分数，以及各叶子区间的下界
      */
-    private int calculateSegmentCount(double minScore, double maxScore) {
-        double range = maxScore - minScore;
-        // 确保至少有2个区间
-        int minSegments = 2;
-        // 计算需要的区间数量（向上取整到最接近的2的幂）
-        int count = Math.max(minSegments, (int) Math.ceil(range / 100)); // 每个区间至少100分
-        // 确保是2的幂
-        return (int) Math.pow(2, Math.ceil(Math.log(count) / Math.log(2)));
+    public List<String> getLayoutArgs() {
+        return layoutArgs;
     }
 
     /**
-     * 递归构建线段树
+     * 将旧格式（"%.4f-%.4f"区间标识）的Redis Hash迁移为按节点编号存储的field，加载已存在的线段树时执行
+     * 迁移在一次Lua脚本调用中完成，脚本内再次检查是否已迁移，多个实例同时加载时不会互相覆盖
      */
-    private SegmentTreeNode buildTreeRecursive(double lower, double upper, int remainingSegments) {
-        // 确保边界是整数
-        lower = Math.floor(lower);
-        upper = Math.floor(upper);
+    private void migrateLegacyFields() {
+        if (Boolean.TRUE.equals(redisTemplate.opsForHash().hasKey(redisKey, fields[1]))) {
+            return;
+        }
 
-        // 如果区间太小或剩余段数为1，直接返回叶子节点
-        if (remainingSegments <= 1 || upper <= lower) {
-            return new SegmentTreeNode(roundToDecimalPlaces(lower), roundToDecimalPlaces(upper));
+        String[] legacyKeys = getLegacySegmentKeys();
+        List<String> args = new ArrayList<>(fields.length * 2);
+        for (int i = 1; i < fields.length; i++) {
+            args.add(legacyKeys[i]);
+            args.add(fields[i]);
         }
+        Long migrated = redisTemplate.execute(MIGRATE_SEGMENT_FIELDS_SCRIPT, Collections.singletonList(redisKey), args.toArray());
+        if (migrated != null && migrated == 1) {
+            log.info("线段树区间标识已迁移为节点编号 - key: {}", redisKey);
+        }
+    }
 
-        // 计算每个区间的长度
-        double segmentLength = (upper - lower) / remainingSegments;
-        if (segmentLength < 1) {
-            return new SegmentTreeNode(roundToDecimalPlaces(lower), roundToDecimalPlaces(upper));
+    /**
+     * 计算各节点在旧格式中的区间标识："下界-上界"，保留4位小数
+     * 叶子区间的上界为下一个叶子区间的下界减1，子区间将 (lower - 1, upper] 等分
+     */
+    private String[] getLegacySegmentKeys() {
+        double[] legacyLowers = new double[fields.length];
+        double[] legacyUppers = new double[fields.length];
+        for (int k = 0; k < leafCount; k++) {
+            legacyLowers[leafCount + k] = leafLowers[k];
+            legacyUppers[leafCount + k] = k + 1 < leafCount ? leafLowers[k + 1] - 1 : maxScore;
+        }
+        for (int i = leafCount - 1; i >= 1; i--) {
+            legacyLowers[i] = legacyLowers[2 * i];
+            legacyUppers[i] = legacyUppers[2 * i + 1];
+        }
+        for (int leaf = leafCount; leaf < leafCount * 2; leaf++) {
+            double start = legacyLowers[leaf] - 1;
+            double width = (legacyUppers[leaf] - start) / sketchBuckets;
+            for (int b = 0; b < sketchBuckets; b++) {
+                int bucket = getBucketIndex(leaf, b);
+                legacyLowers[bucket] = roundToDecimalPlaces(start + width * b);
+                legacyUppers[bucket] = b + 1 < sketchBuckets
+                        ? roundToDecimalPlaces(start + width * (b + 1)) : legacyUppers[leaf];
+            }
+        }
+
+        String[] keys = new String[fields.length];
+        for (int i = 1; i < fields.length; i++) {
+            keys[i] = String.format("%.4f-%.4f", legacyLowers[i], legacyUppers[i]);
         }
+        return keys;
+    }
 
-        // 计算中间值
-        double mid = lower + segmentLength;
-        mid = Math.floor(mid);
+    /**
+     * 判断Redis中已有的计数是否按当前的子区间数量维护
+     * 未记录子区间数量的计数视为未启用子区间
+     */
+    public boolean matchesStoredLayout() {
+        Object stored = redisTemplate.opsForHash().get(redisKey, SKETCH_BUCKETS_FIELD);
+        int storedBuckets = stored != null ? Integer.parseInt(stored.toString()) : 0;
+        return storedBuckets == sketchBuckets;
+    }
 
-        // 如果中间值等于下界或上界，说明无法继续分割
-        if (mid <= lower || mid >= upper) {
-            return new SegmentTreeNode(roundToDecimalPlaces(lower), roundToDecimalPlaces(upper));
+    /**
+     * 检查是否为2的幂次方
+     */
+    private boolean isPowerOfTwo(int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+
+    private void buildSegmentTree(long maxScore, long segCount) {
+        // 计算每个分段的长度
+        long segLen = maxScore / segCount;
+        if (maxScore % segCount != 0) {
+            segLen++;
+        }
+
+        // 计算各个分段的下界
+        List<Long> lowers = new ArrayList<>();
+        for (long i = 1; i <= maxScore; i += segLen) {
+            lowers.add(i);
         }
+        buildSegmentTree(lowers.stream().mapToLong(Long::longValue).toArray(), maxScore);
+    }
 
-        // 创建当前节点
-        SegmentTreeNode node = new SegmentTreeNode(roundToDecimalPlaces(lower), roundToDecimalPlaces(upper));
+    /**
+     * 按叶子区间边界计算所有节点的区间
+     * 叶子区间覆盖到下一个叶子区间的下界之前，父节点区间由左右子节点区间合并而成
+     */
+    private void buildSegmentTree(long[] leafLowers, long maxScore) {
+        this.leafLowers = leafLowers.clone();
+        this.maxScore = maxScore;
+        this.leafCount = leafLowers.length;
+
+        int size = leafCount * 2 + leafCount * sketchBuckets;
+        lowers = new long[size];
+        uppers = new long[size];
+        fields = new String[size];
+
+        for (int k = 0; k < leafCount; k++) {
+            lowers[leafCount + k] = leafLowers[k];
+            uppers[leafCount + k] = (k + 1 < leafCount ? leafLowers[k + 1] : maxScore + 1) - 1;
+        }
+        for (int i = leafCount - 1; i >= 1; i--) {
+            lowers[i] = lowers[2 * i];
+            uppers[i] = uppers[2 * i + 1];
+        }
 
-        // 计算左右子树的区间数量
-        int leftSegments = remainingSegments / 2;
-        int rightSegments = remainingSegments - leftSegments;
+        // 将每个叶子区间等分为sketchBuckets个子区间，点赞数s属于第 (s - lower) * sketchBuckets / width 个子区间；
+        // 叶子区间宽度小于子区间数量时，部分子区间为空
+        for (int leaf = leafCount; leaf < leafCount * 2; leaf++) {
+            long width = uppers[leaf] - lowers[leaf] + 1;
+            for (int b = 0; b < sketchBuckets; b++) {
+                int bucket = getBucketIndex(leaf, b);
+                lowers[bucket] = lowers[leaf] + (width * b + sketchBuckets - 1) / sketchBuckets;
+                uppers[bucket] = lowers[leaf] + (width * (b + 1) + sketchBuckets - 1) / sketchBuckets - 1;
+            }
+        }
 
-        // 递归构建左右子树
-        node.setLeft(buildTreeRecursive(lower, mid, leftSegments));
-        node.setRight(buildTreeRecursive(mid, upper, rightSegments));
+        for (int i = 1; i < size; i++) {
+            fields[i] = Integer.toString(i);
+        }
 
-        return node;
+        List<String> args = new ArrayList<>(leafCount + 3);
+        args.add(String.valueOf(leafCount));
+        args.add(String.valueOf(sketchBuckets));
+        args.add(String.valueOf(maxScore));
+        for (long lower : leafLowers) {
+            args.add(String.valueOf(lower));
+        }
+        layoutArgs = Collections.unmodifiableList(args);
+        if (inMemory) {
+            counts = new AtomicLongArray(size);
+        }
+        if (isBuffered()) {
+            pendingDeltas = new LongAdder[size];
+            for (int i = 1; i < size; i++) {
+                pendingDeltas[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * 从Redis Hash中一次性加载所有区间计数到内存
+     */
+    private void hydrateCounts() {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(redisKey);
+        for (int i = 1; i < fields.length; i++) {
+            Object value = entries.get(fields[i]);
+            counts.set(i, value != null ? Long.parseLong(value.toString()) : 0);
+        }
+    }
+
+    /**
+     * 根据排行榜中已有的点赞数一次性初始化所有区间计数
+     * 计数在本地计算完成后通过一次HMSET写入Redis
+     * @param likes 排行榜中所有用户的点赞数
+     */
+    public void initializeCounts(long[] likes) {
+        long[] initialCounts = new long[fields.length];
+        for (long score : likes) {
+            int leaf = getLeafOf(score);
+            if (leaf == 0) {
+                continue;
+            }
+            if (sketchBuckets > 0) {
+                initialCounts[getBucketOf(leaf, score)]++;
+            }
+            for (int node = leaf; node >= 1; node >>= 1) {
+                initialCounts[node]++;
+            }
+        }
+
+        Map<String, String> initialFields = new HashMap<>();
+        for (int i = 1; i < fields.length; i++) {
+            initialFields.put(fields[i], String.valueOf(initialCounts[i]));
+        }
+        initialFields.put(SKETCH_BUCKETS_FIELD, String.valueOf(sketchBuckets));
+        redisTemplate.opsForHash().putAll(redisKey, initialFields);
+
+        if (inMemory) {
+            for (int i = 1; i < fields.length; i++) {
+                counts.set(i, initialCounts[i]);
+            }
+        }
     }
 
     /**
@@ -199,150 +496,370 @@ public class SegmentTree {
      */
     private void initializeRedisCounts() {
         Map<String, String> counts = new HashMap<>();
-        traverseTree(root, node -> counts.put(node.getSegmentKey(), "0"));
+        for (int i = 1; i < fields.length; i++) {
+            counts.put(fields[i], "0");
+        }
+        counts.put(SKETCH_BUCKETS_FIELD, String.valueOf(sketchBuckets));
         redisTemplate.opsForHash().putAll(redisKey, counts);
     }
 
     /**
-     * 遍历线段树
+     * 更新用户积分
+     * 新旧积分所在的叶子区间从下往上走到公共祖先为止，公共祖先的区间计数不变，只更新两条路径的差集，
+     * 缓冲模式下变化累加到本地等待批量回写，否则所有变化通过一次Lua脚本调用完成
+     * @param oldScore 旧点赞数，新用户为0
+     * @param newScore 新点赞数
      */
-    private void traverseTree(SegmentTreeNode node, Consumer<SegmentTreeNode> action) {
-        if (node == null) return;
-        action.accept(node);
-        traverseTree(node.getLeft(), action);
-        traverseTree(node.getRight(), action);
+    public void updateScore(long oldScore, long newScore) {
+        int oldLeaf = getLeafOf(oldScore);
+        int newLeaf = getLeafOf(newScore);
+        int oldBucket = sketchBuckets > 0 && oldLeaf != 0 ? getBucketOf(oldLeaf, oldScore) : 0;
+        int newBucket = sketchBuckets > 0 && newLeaf != 0 ? getBucketOf(newLeaf, newScore) : 0;
+        if (oldLeaf == newLeaf && oldBucket == newBucket) {
+            return;
+        }
+
+        if (isBuffered()) {
+            if (oldBucket != 0) {
+                incrementCount(oldBucket, -1);
+            }
+            if (newBucket != 0) {
+                incrementCount(newBucket, 1);
+            }
+            // 叶子区间位于同一层，同时向上移动直到相遇
+            for (int o = oldLeaf, n = newLeaf; o != n; o >>= 1, n >>= 1) {
+                if (o != 0) {
+                    incrementCount(o, -1);
+                }
+                if (n != 0) {
+                    incrementCount(n, 1);
+                }
+            }
+            onBufferedUpdate();
+            return;
+        }
+
+        // 区间field和变化量成对传入脚本
+        List<String> args = new ArrayList<>();
+        if (oldBucket != 0) {
+            args.add(fields[oldBucket]);
+            args.add("-1");
+        }
+        if (newBucket != 0) {
+            args.add(fields[newBucket]);
+            args.add("1");
+        }
+        for (int o = oldLeaf, n = newLeaf; o != n; o >>= 1, n >>= 1) {
+            if (o != 0) {
+                args.add(fields[o]);
+                args.add("-1");
+            }
+            if (n != 0) {
+                args.add(fields[n]);
+                args.add("1");
+            }
+        }
+        redisTemplate.execute(UPDATE_SEGMENT_SCRIPT, Collections.singletonList(redisKey), args.toArray());
     }
 
     /**
-     * 更新用户积分
-     * @param oldScore 旧积分
-     * @param newScore 新积分
+     * 新增一个用户，将其所在的所有区间计数加1
+     * @param score 用户点赞数
      */
-    public void updateScore(double oldScore, double newScore) {
-        oldScore = roundToDecimalPlaces(oldScore);
-        newScore = roundToDecimalPlaces(newScore);
-
-        // 遍历旧积分所在的区间，执行减1操作
-        traverseScore(oldScore, node -> {
-            String key = node.getSegmentKey();
-            redisTemplate.opsForHash().increment(redisKey, key, -1);
-        });
+    public void insertScore(long score) {
+        updateScore(0, score);
+    }
 
-        // 遍历新积分所在的区间，执行加1操作
-        traverseScore(newScore, node -> {
-            String key = node.getSegmentKey();
-            redisTemplate.opsForHash().increment(redisKey, key, 1);
-        });
+    /**
+     * 修改内存模式下的区间计数，并记录待回写Redis的变化
+     */
+    private void incrementCount(int node, long delta) {
+        if (inMemory) {
+            counts.addAndGet(node, delta);
+        }
+        pendingDeltas[node].add(delta);
     }
 
     /**
-     * 遍历指定积分所在的区间
+     * 缓冲的积分更新次数达到阈值时立即回写
+     * 已有线程在回写时直接返回；回写失败的变化保留在缓冲中，由下次回写重试
      */
-    private void traverseScore(double score, Consumer<SegmentTreeNode> action) {
-        SegmentTreeNode currentNode = root;
-        while (currentNode != null) {
-            if (currentNode.getLower() > score || currentNode.getUpper() < score) {
-                break;
+    private void onBufferedUpdate() {
+        pendingUpdates.increment();
+        if (retired) {
+            // 移出注册表后仍持有引用的线程写入的变化不会再被定时回写，立即回写
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.warn("回写已移除的线段树计数失败 - key: {}", redisKey, e);
             }
+            return;
+        }
+        if (flushThreshold <= 0 || pendingUpdates.sum() < flushThreshold || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            flushLocked();
+        } catch (RuntimeException e) {
+            log.warn("达到阈值回写线段树计数失败，等待下次回写 - key: {}", redisKey, e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
 
-            action.accept(currentNode);
-
-            if (currentNode.getLeft() == null) {
-                break;
-            }
+    /**
+     * Redis模式下距上次回写超过允许的最大延迟且有未回写的变化时，先回写再查询排名
+     */
+    private void flushIfStale() {
+        if (writeBehind && maxStalenessNanos > 0
+                && System.nanoTime() - lastFlushNanos > maxStalenessNanos
+                && pendingUpdates.sum() > 0) {
+            flush();
+        }
+    }
 
-            double split = currentNode.getLeft().getUpper();
-            if (score <= split) {
-                currentNode = currentNode.getLeft();
-            } else {
-                currentNode = currentNode.getRight();
-            }
+    /**
+     * 将缓冲的计数变化通过一次pipeline回写到Redis
+     * 回写失败时变化会重新累积，等待下次回写
+     */
+    public void flush() {
+        if (pendingDeltas == null) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flushLocked();
+        } finally {
+            flushLock.unlock();
         }
     }
 
     /**
-     * 获取用户排名
-     * @param score 用户积分
-     * @return 排名
+     * 回写缓冲的计数变化并将线段树标记为已移除，之后的计数变化在更新时立即回写
+     * 回写失败时恢复为未移除状态并抛出异常，由调用方保留该线段树
      */
-    public long getRank(double score) {
-        score = roundToDecimalPlaces(score);
-        BigDecimal rank = BigDecimal.ZERO;
-        SegmentTreeNode currentNode = root;
+    public void retire() {
+        retired = true;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            retired = false;
+            throw e;
+        }
+    }
 
-        while (currentNode != null) {
-            if (currentNode.getLower() > score || currentNode.getUpper() < score) {
-                break;
+    /**
+     * 内存模式下从Redis Hash重新读取区间计数，合并其他实例回写的变化
+     * 在回写锁内读取，本实例已回写的变化都已包含在Redis中，尚未回写的变化保留在本地计数中
+     */
+    public void refreshCounts() {
+        if (!inMemory) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(redisKey);
+            if (entries.isEmpty()) {
+                return;
             }
+            for (int i = 1; i < fields.length; i++) {
+                Object value = entries.get(fields[i]);
+                long stored = value != null ? Long.parseLong(value.toString()) : 0;
+                // 本地计数减去未回写的变化即为本地已知的Redis计数，按差值修正，不覆盖并发写入的变化
+                long known = counts.get(i) - pendingDeltas[i].sum();
+                if (stored != known) {
+                    counts.addAndGet(i, stored - known);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
 
-            // 获取当前区间的用户数量
-            String countStr = (String) redisTemplate.opsForHash().get(redisKey, currentNode.getSegmentKey());
-            long count = countStr != null ? Long.parseLong(countStr) : 0;
-
-            if (currentNode.getLeft() == null) {
-                // 叶子节点，计算精确排名
-                BigDecimal upper = BigDecimal.valueOf(currentNode.getUpper());
-                BigDecimal lower = BigDecimal.valueOf(currentNode.getLower());
-                BigDecimal currentScore = BigDecimal.valueOf(score);
-
-                // 使用BigDecimal进行精确计算
-                BigDecimal numerator = upper.subtract(currentScore)
-                        .multiply(BigDecimal.valueOf(count));
-                BigDecimal denominator = upper.subtract(lower).add(BigDecimal.ONE);
-
-                rank = rank.add(numerator.divide(denominator, DECIMAL_PLACES, RoundingMode.HALF_UP));
-                break;
+    private void flushLocked() {
+        long updates = pendingUpdates.sum();
+        pendingUpdates.add(-updates);
+        lastFlushNanos = System.nanoTime();
+
+        // 取出当前累积的变化；并发写入的变化留在LongAdder中，由下次回写处理
+        long[] deltas = new long[fields.length];
+        boolean dirty = false;
+        for (int i = 1; i < fields.length; i++) {
+            long delta = pendingDeltas[i].sum();
+            if (delta != 0) {
+                pendingDeltas[i].add(-delta);
+                deltas[i] = delta;
+                dirty = true;
             }
+        }
+        if (!dirty) {
+            return;
+        }
 
-            double split = currentNode.getLeft().getUpper();
-            if (score <= split) {
-                // 如果右子树存在，加上右子树的用户数量
-                if (currentNode.getRight() != null) {
-                    String rightCountStr = (String) redisTemplate.opsForHash()
-                            .get(redisKey, currentNode.getRight().getSegmentKey());
-                    if (rightCountStr != null) {
-                        rank = rank.add(BigDecimal.valueOf(Long.parseLong(rightCountStr)));
+        try {
+            RedisSerializer<String> serializer = RedisSerializer.string();
+            byte[] rawKey = serializer.serialize(redisKey);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (int i = 1; i < deltas.length; i++) {
+                    if (deltas[i] != 0) {
+                        connection.hashCommands().hIncrBy(rawKey, serializer.serialize(fields[i]), deltas[i]);
                     }
                 }
-                currentNode = currentNode.getLeft();
-            } else {
-                currentNode = currentNode.getRight();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // 回写失败，将变化放回待回写数组
+            for (int i = 1; i < deltas.length; i++) {
+                if (deltas[i] != 0) {
+                    pendingDeltas[i].add(deltas[i]);
+                }
             }
+            pendingUpdates.add(updates);
+            throw e;
         }
+    }
 
-        return rank.longValue();
+    /**
+     * 获取用户排名
+     * @param score 用户点赞数
+     * @return 排名
+     */
+    public long getRank(long score) {
+        if (!inMemory) {
+            flushIfStale();
+            return getRankByScript(score).getRank();
+        }
+        return getLocalRank(score);
     }
 
     /**
-     * 获取指定分数所在的所有区间节点
-     * @param score 用户积分
-     * @return 包含该分数的所有区间节点列表
+     * 估算用户排名及其误差上界
+     * 路径上右兄弟区间的计数是精确的，误差只来自最终插值的区间：
+     * 未启用子区间时为叶子区间，启用后为叶子区间内的子区间
+     * @param score 用户点赞数
+     * @return 粗略排名和误差上界
      */
-    public List<SegmentTreeNode> getSegmentsForScore(double score) {
-        score = roundToDecimalPlaces(score);
-        List<SegmentTreeNode> segments = new ArrayList<>();
-        SegmentTreeNode currentNode = root;
+    public FuzzyRank estimateRank(long score) {
+        if (!inMemory) {
+            flushIfStale();
+            return getRankByScript(score);
+        }
+        int leaf = getLeafOf(score);
+        int interpolated = sketchBuckets > 0 && leaf != 0 ? getBucketOf(leaf, score) : leaf;
+        return new FuzzyRank(getLocalRank(score), counts.get(interpolated));
+    }
 
-        while (currentNode != null) {
-            if (currentNode.getLower() > score || currentNode.getUpper() < score) {
-                break;
+    /**
+     * 根据内存中的区间计数计算排名
+     */
+    private long getLocalRank(long score) {
+        if (score < lowers[1] || score > uppers[1]) {
+            return 0;
+        }
+        long rank = 0;
+        int node = 1;
+        while (node < leafCount) {
+            if (score <= uppers[2 * node]) {
+                // 积分位于左子树，加上右子树的用户数量
+                rank += counts.get(2 * node + 1);
+                node = 2 * node;
+            } else {
+                node = 2 * node + 1;
+            }
+        }
+        if (sketchBuckets > 0) {
+            int bucket = getBucketOf(node, score);
+            int last = getBucketIndex(node, sketchBuckets - 1);
+            for (int b = bucket + 1; b <= last; b++) {
+                rank += counts.get(b);
             }
+            node = bucket;
+        }
+        return rank + interpolate(counts.get(node), lowers[node], uppers[node] + 1, score);
+    }
 
-            // 将当前节点添加到结果列表
-            segments.add(currentNode);
+    /**
+     * 假设区间 [start, end) 内的用户均匀分布，估算其中高于该点赞数的用户数量
+     */
+    private static long interpolate(long count, long start, long end, long score) {
+        long above = end - score;
+        long width = end - start;
+        // 区间过宽时同时缩小分子分母，避免乘法溢出
+        while (width > Integer.MAX_VALUE) {
+            above >>= 1;
+            width >>= 1;
+        }
+        return count * above / width;
+    }
 
-            if (currentNode.getLeft() == null) {
-                break;
+    /**
+     * 在Redis中计算排名
+     * 本地只计算需要读取的区间（插值区间和需要累加的区间），读取和插值计算由Lua脚本完成
+     */
+    private FuzzyRank getRankByScript(long score) {
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(score));
+        args.add("");
+        args.add("");
+        args.add("");
+
+        int leaf = getLeafOf(score);
+        if (leaf != 0) {
+            for (int node = leaf; node > 1; node >>= 1) {
+                if ((node & 1) == 0) {
+                    // 积分位于左子树，加上右兄弟区间的用户数量
+                    args.add(fields[node + 1]);
+                }
             }
-
-            double split = currentNode.getLeft().getUpper();
-            if (score <= split) {
-                currentNode = currentNode.getLeft();
-            } else {
-                currentNode = currentNode.getRight();
+            int interpolated = leaf;
+            if (sketchBuckets > 0) {
+                interpolated = getBucketOf(leaf, score);
+                int last = getBucketIndex(leaf, sketchBuckets - 1);
+                for (int b = interpolated + 1; b <= last; b++) {
+                    args.add(fields[b]);
+                }
             }
+            args.set(1, String.valueOf(lowers[interpolated]));
+            args.set(2, String.valueOf(uppers[interpolated] + 1));
+            args.set(3, fields[interpolated]);
+        }
+
+        List<?> result = redisTemplate.execute(GET_SEGMENT_RANK_SCRIPT, Collections.singletonList(redisKey), args.toArray());
+        if (result == null || result.size() < 2) {
+            return new FuzzyRank(0, 0);
         }
+        return new FuzzyRank(((Number) result.get(0)).longValue(), ((Number) result.get(1)).longValue());
+    }
+
+    /**
+     * 查找点赞数所在的叶子区间
+     * @param score 点赞数
+     * @return 叶子区间的节点编号，点赞数不在任何叶子区间内时返回0
+     */
+    private int getLeafOf(long score) {
+        if (score < lowers[1] || score > uppers[1]) {
+            return 0;
+        }
+        int node = 1;
+        while (node < leafCount) {
+            node = score <= uppers[2 * node] ? 2 * node : 2 * node + 1;
+        }
+        return node;
+    }
 
-        return segments;
+    /**
+     * 计算点赞数在叶子区间内所属子区间的节点编号
+     */
+    private int getBucketOf(int leaf, long score) {
+        long width = uppers[leaf] - lowers[leaf] + 1;
+        int bucket = (int) ((score - lowers[leaf]) * sketchBuckets / width);
+        return getBucketIndex(leaf, bucket);
+    }
+
+    /**
+     * 计算叶子区间第b个子区间的节点编号
+     */
+    private int getBucketIndex(int leaf, int bucket) {
+        return leafCount * 2 + (leaf - leafCount) * sketchBuckets + bucket;
     }
-}
\ No newline at end of file
+}
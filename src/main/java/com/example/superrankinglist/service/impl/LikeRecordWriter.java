@@ -0,0 +1,320 @@
+package com.example.superrankinglist.service.impl;
+
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.mapper.LikeMapper;
+import com.example.superrankinglist.pojo.LikeRecord;
+import lombok.extern.log4j.Log4j2;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 点赞记录异步持久化
+ * 点赞写入Redis后将点赞记录放入内存队列，按间隔或达到批量大小时通过MyBatis批量执行器
+ * 以多行INSERT ... ON DUPLICATE KEY UPDATE写入like_record表，请求线程不访问数据库。
+ * 写入失败时按指数退避重试，仍失败或队列已满时追加到本地溢出文件，下次回写时优先重放
+ */
+@Log4j2
+@Component
+public class LikeRecordWriter {
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final RankingConfig.Persist config;
+    private final BlockingQueue<LikeRecord> queue;
+    private final Path spillFile;
+    private final Path replayFile;
+
+    /**
+     * 同一时间只有一个线程写入数据库
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * 溢出文件的追加和改名互斥，请求线程写溢出文件时不等待数据库。
+     * 持锁期间有文件IO，使用ReentrantLock而不是synchronized，避免虚拟线程阻塞时占住载体线程
+     */
+    private final ReentrantLock spillLock = new ReentrantLock();
+
+    /**
+     * 达到批量大小时触发回写，避免在请求线程中访问数据库
+     */
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "like-record-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder persisted = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public LikeRecordWriter(SqlSessionFactory sqlSessionFactory, RankingConfig rankingConfig) {
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.config = rankingConfig.getPersist();
+        this.queue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+        this.spillFile = Paths.get(config.getSpillFile());
+        this.replayFile = Paths.get(config.getSpillFile() + ".replay");
+    }
+
+    /**
+     * 记录一次点赞，队列已满时直接写入溢出文件
+     */
+    public void enqueue(Long userId, Long rankingListId) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        LikeRecord record = new LikeRecord();
+        record.setUserId(userId);
+        record.setRankingListId(rankingListId);
+        if (!queue.offer(record)) {
+            spill(List.of(record));
+            return;
+        }
+        if (queue.size() >= config.getBatchSize()) {
+            flushExecutor.execute(this::flush);
+        }
+    }
+
+    /**
+     * 回写点赞记录：先重放溢出文件，再写入队列中的点赞记录
+     */
+    @Scheduled(fixedDelayString = "${ranking.persist.flush-interval-ms:1000}")
+    public void flush() {
+        if (!config.isEnabled() || !flushLock.tryLock()) {
+            return;
+        }
+        try {
+            replaySpillFile();
+            List<LikeRecord> batch = new ArrayList<>(config.getBatchSize());
+            while (queue.drainTo(batch, config.getBatchSize()) > 0) {
+                if (!writeWithRetry(batch)) {
+                    // 数据库不可用，本轮剩余的点赞记录一并写入溢出文件
+                    queue.drainTo(batch);
+                    spill(batch);
+                    return;
+                }
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 写入一批点赞记录，失败时按指数退避重试
+     * @return 是否写入成功
+     */
+    private boolean writeWithRetry(List<LikeRecord> batch) {
+        long backoffMs = config.getRetryBackoffMs();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                write(batch);
+                return true;
+            } catch (PersistenceException e) {
+                if (isConstraintViolation(e)) {
+                    // 外键等约束错误重试也不会成功，逐条写入以隔离出错的记录
+                    writeOneByOne(batch);
+                    return true;
+                }
+                if (attempt >= config.getMaxRetries()) {
+                    log.error("点赞记录写入失败，已重试 {} 次", attempt, e);
+                    return false;
+                }
+                log.warn("点赞记录写入失败，{} 毫秒后重试: {}", backoffMs, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                backoffMs *= 2;
+            }
+        }
+    }
+
+    /**
+     * 使用批量执行器写入，每个多行INSERT最多包含batchSize条记录
+     */
+    private void write(List<LikeRecord> records) {
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            LikeMapper mapper = session.getMapper(LikeMapper.class);
+            int batchSize = config.getBatchSize();
+            for (int from = 0; from < records.size(); from += batchSize) {
+                mapper.insertLikes(records.subList(from, Math.min(records.size(), from + batchSize)));
+            }
+            session.flushStatements();
+            session.commit();
+        }
+        persisted.add(records.size());
+    }
+
+    private void writeOneByOne(List<LikeRecord> records) {
+        for (LikeRecord record : records) {
+            try {
+                write(List.of(record));
+            } catch (PersistenceException e) {
+                dropped.increment();
+                log.error("点赞记录写入失败，已丢弃 - 用户: {}, 排行榜: {}", record.getUserId(), record.getRankingListId(), e);
+            }
+        }
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 追加到溢出文件，每行一条点赞记录（用户ID,排行榜ID），写入后立即同步到磁盘
+     */
+    private void spill(List<LikeRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        spillLock.lock();
+        try {
+            writeSpillFile(records);
+        } finally {
+            spillLock.unlock();
+        }
+    }
+
+    private void writeSpillFile(List<LikeRecord> records) {
+        try {
+            Path parent = spillFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (FileOutputStream out = new FileOutputStream(spillFile.toFile(), true);
+                 Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                for (LikeRecord record : records) {
+                    writer.write(record.getUserId() + "," + record.getRankingListId() + "\n");
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+            spilled.add(records.size());
+            log.warn("{} 条点赞记录已写入溢出文件 {}", records.size(), spillFile);
+        } catch (IOException e) {
+            dropped.add(records.size());
+            log.error("写入溢出文件失败，丢失 {} 条点赞记录", records.size(), e);
+        }
+    }
+
+    /**
+     * 重放溢出文件
+     * 先将溢出文件改名，重放期间新的溢出记录写入新文件；重放失败时保留改名后的文件，下次继续重放
+     */
+    private void replaySpillFile() {
+        try {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                spillLock.lock();
+                try {
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    spillLock.unlock();
+                }
+            }
+            List<LikeRecord> batch = new ArrayList<>(config.getBatchSize());
+            try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    if (comma < 0) {
+                        continue;
+                    }
+                    LikeRecord record = new LikeRecord();
+                    record.setUserId(Long.valueOf(line.substring(0, comma)));
+                    record.setRankingListId(Long.valueOf(line.substring(comma + 1)));
+                    batch.add(record);
+                    if (batch.size() == config.getBatchSize()) {
+                        if (!writeWithRetry(batch)) {
+                            return;
+                        }
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty() && !writeWithRetry(batch)) {
+                return;
+            }
+            // 重复写入同一条记录只会更新update_time，部分重放后再次重放不影响结果
+            Files.delete(replayFile);
+            log.info("溢出文件重放完成");
+        } catch (IOException | NumberFormatException e) {
+            log.error("重放溢出文件失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flushLock.lock();
+        try {
+            // 关闭时不再等待数据库重试，写不进去的点赞记录保存在溢出文件中，下次启动后重放
+            List<LikeRecord> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                try {
+                    write(remaining);
+                } catch (PersistenceException e) {
+                    if (isConstraintViolation(e)) {
+                        writeOneByOne(remaining);
+                    } else {
+                        log.error("关闭时写入点赞记录失败，写入溢出文件", e);
+                        spill(remaining);
+                    }
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 获取持久化统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("persisted", persisted.sum());
+        stats.put("spilled", spilled.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("spillFilePending", Files.exists(spillFile) || Files.exists(replayFile));
+        return stats;
+    }
+}
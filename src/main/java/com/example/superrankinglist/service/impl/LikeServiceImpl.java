@@ -1,22 +1,48 @@
 package com.example.superrankinglist.service.impl;
 
+import com.example.superrankinglist.common.BusinessException;
+import com.example.superrankinglist.common.LikeEvent;
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.dto.LikeBatchEntryDto;
+import com.example.superrankinglist.dto.LikeBatchResultDto;
+import com.example.superrankinglist.dto.LikeCheckDto;
 import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.pojo.RankingItem;
+import com.example.superrankinglist.service.HotLikeAggregator;
+import com.example.superrankinglist.service.LikeIngestQueue;
 import com.example.superrankinglist.service.LikeService;
+import com.example.superrankinglist.service.SegmentTree;
 import com.example.superrankinglist.utils.UserContext;
+import io.lettuce.core.RedisCommandExecutionException;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.RANKING_VERSION_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.USER_LIKE_KEY_PREFIX;
 
 /**
  * 点赞服务实现类
@@ -26,20 +52,103 @@ import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
 public class LikeServiceImpl implements LikeService {
 
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private RedisTemplate<String, String> stringRedisTemplate;
 
-    private DefaultRedisScript<Long> redisScript;
+    /**
+     * 点赞脚本返回结果的类型，List.class不能直接表示带类型参数的List
+     */
+    @SuppressWarnings("unchecked")
+    private static final Class<List<Object>> LIST_RESULT = (Class<List<Object>>) (Class<?>) List.class;
+
+    /**
+     * 点赞脚本，一次调用完成积分更新和线段树区间计数更新
+     */
+    private DefaultRedisScript<List<Object>> likeScript;
 
     @Autowired
     private SegmentTreeServiceImpl segmentTreeServiceImpl;
 
+    @Autowired
+    private RankingConfig rankingConfig;
+
+    /**
+     * 点赞记录异步持久化，未注入时不持久化
+     */
+    @Autowired(required = false)
+    private LikeRecordWriter likeRecordWriter;
+
+    /**
+     * 排行榜项目同步，未注入时不同步
+     */
+    @Autowired(required = false)
+    private RankingItemWriter rankingItemWriter;
+
+    /**
+     * 前K名快照，未注入时不通知
+     */
+    @Autowired(required = false)
+    private TopKSnapshotCache topKSnapshotCache;
+
+    /**
+     * 热点用户点赞合并，未启用时为null
+     */
+    private HotLikeAggregator hotLikeAggregator;
+
+    /**
+     * 异步点赞队列，未启用时为null
+     */
+    private LikeIngestQueue likeIngestQueue;
+
+    /**
+     * 是否启用点赞去重
+     */
+    private boolean dedup;
+
+    /**
+     * 积分编码，计算点赞脚本所需的积分时间部分
+     */
+    private ScoreCodec scoreCodec;
+
+    /**
+     * 重复点赞时批量结果中的失败原因
+     */
+    static final String DUPLICATE_LIKE = "已点赞过该排行榜";
+
+    /**
+     * 无法确定点赞脚本是否已执行时批量结果中的失败原因前缀
+     */
+    static final String UNKNOWN_RESULT = "点赞结果未知，可能已写入: ";
+
+    /**
+     * Redis在执行命令前拒绝时错误回复的前缀，这些条目的点赞脚本没有执行，可以重试
+     */
+    private static final String[] REJECTED_BEFORE_EXECUTION = {"NOSCRIPT", "BUSY", "LOADING"};
+
     @PostConstruct
     public void init() {
         try {
-            redisScript = new DefaultRedisScript<>();
-            redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/update_ranking.lua")));
-            redisScript.setResultType(Long.class);
+            likeScript = new DefaultRedisScript<>();
+            likeScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/like.lua")));
+            likeScript.setResultType(LIST_RESULT);
             log.info("Lua脚本加载成功");
+            dedup = rankingConfig.getLike().isDedup();
+            RankingConfig.Score score = rankingConfig.getScore();
+            scoreCodec = new ScoreCodec(score.getSeasonStartMs(), score.getTimeUnitMs());
+            long hotThreshold = rankingConfig.getLike().getHotThreshold();
+            if (hotThreshold > 0 && dedup) {
+                // 去重后每个用户在每个排行榜只能点赞一次，不存在需要合并的热点用户
+                log.warn("已启用点赞去重，忽略热点用户点赞合并配置");
+            } else if (hotThreshold > 0) {
+                hotLikeAggregator = new HotLikeAggregator(hotThreshold);
+                log.info("热点用户点赞合并已启用，阈值: {} 次/秒", hotThreshold);
+            }
+            RankingConfig.Like like = rankingConfig.getLike();
+            if (like.isAsyncIngest()) {
+                likeIngestQueue = new LikeIngestQueue(like.getAsyncShards(), like.getAsyncQueueCapacity(),
+                        like.getBatchMaxSize(), like.getAsyncRetryBackoffMs(), like.getAsyncMaxRetryBackoffMs(),
+                        this::applyLikeEvents);
+                log.info("异步点赞已启用，分片数: {}, 每个分片队列容量: {}", like.getAsyncShards(), like.getAsyncQueueCapacity());
+            }
         } catch (Exception e) {
             log.error("Lua脚本加载失败", e);
             throw new RuntimeException("Lua脚本加载失败", e);
@@ -48,6 +157,465 @@ public class LikeServiceImpl implements LikeService {
 
     @Override
     public boolean like(LikeDto likeDto) {
+        // 热点用户的点赞先在本地合并，由flushHotLikes定期写入
+        Long userId = UserContext.getUserId();
+        if (userId != null && offerHotLike(likeDto.getRankingListId(), userId)) {
+            return true;
+        }
+        return applyLike(likeDto, false) != null;
+    }
+
+    /**
+     * 热点用户的点赞放入本地合并窗口
+     * @return 是否已合并，未合并时由调用方直接写入
+     */
+    boolean offerHotLike(Long rankingListId, Long userId) {
+        return hotLikeAggregator != null && rankingListId != null
+                && hotLikeAggregator.offer(rankingListId, userId, System.currentTimeMillis());
+    }
+
+    @Override
+    public RankingItem likeWithRank(LikeDto likeDto) {
+        RankingItem item = applyLike(likeDto, true);
+        if (item == null) {
+            throw new BusinessException(400, DUPLICATE_LIKE);
+        }
+        return item;
+    }
+
+    @Override
+    public boolean checkLiked(LikeCheckDto likeCheckDto) {
+        Long userId = UserContext.getUserId();
+        if (userId == null) {
+            throw new BusinessException(401, "User not logged in");
+        }
+        Boolean liked = stringRedisTemplate.opsForValue()
+                .getBit(USER_LIKE_KEY_PREFIX + likeCheckDto.getRankingListId(), userId);
+        return Boolean.TRUE.equals(liked);
+    }
+
+    @Override
+    public List<LikeBatchResultDto> likeBatch(List<LikeBatchEntryDto> entries) {
+        int maxSize = rankingConfig.getLike().getBatchMaxSize();
+        if (entries == null || entries.isEmpty()) {
+            throw new BusinessException(400, "批量点赞条目不能为空");
+        }
+        if (entries.size() > maxSize) {
+            throw new BusinessException(400, "批量点赞条目数超过上限: " + maxSize);
+        }
+
+        // 结果与请求条目按下标一一对应；按排行榜分组，同一排行榜内保持提交顺序
+        List<LikeBatchResultDto> results = new ArrayList<>(entries.size());
+        Map<Long, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            LikeBatchEntryDto entry = entries.get(i);
+            LikeBatchResultDto result = new LikeBatchResultDto();
+            result.setRankingListId(entry.getRankingListId());
+            result.setUserId(entry.getUserId());
+            results.add(result);
+            if (entry.getRankingListId() == null || entry.getUserId() == null
+                    || entry.getDelta() == null || entry.getDelta() <= 0) {
+                result.setMessage("条目参数无效");
+                continue;
+            }
+            if (entry.getDelta() > ScoreCodec.MAX_LIKES) {
+                // 点赞数超过上限后积分超出double的精确整数范围，超过上限的点赞由点赞脚本拒绝
+                result.setMessage("积分增量超过上限: " + ScoreCodec.MAX_LIKES);
+                continue;
+            }
+            groups.computeIfAbsent(entry.getRankingListId(), k -> new ArrayList<>()).add(i);
+        }
+        if (groups.isEmpty()) {
+            return results;
+        }
+
+        long[] timestamps = new long[entries.size()];
+        Arrays.fill(timestamps, System.currentTimeMillis());
+        // 批量接口提交的是积分增量，不做点赞去重
+        pipelineLikes(entries, timestamps, groups, results, false);
+        return results;
+    }
+
+    /**
+     * 通过一次Redis管道执行多条点赞
+     * 每个排行榜只解析一次线段树和叶子区间参数，每个条目对应一条EVALSHA
+     * @param timestamps 每个条目的点赞时间，与entries按下标对应
+     * @param groups 按排行榜分组的条目下标
+     * @param results 每个条目的处理结果，与entries按下标对应
+     * @param dedup 是否按点赞用户位图去重
+     * @return 可重试的失败条目下标，即Redis明确在执行点赞脚本前拒绝的条目。
+     * 点赞脚本不是幂等的，超时、连接断开等无法确定是否已执行的条目不能重试，与被点赞脚本拒绝的条目一样不包含在内
+     * @throws RuntimeException 管道发送前失败，所有条目都未执行，调用方可以整体重试
+     */
+    private List<Integer> pipelineLikes(List<LikeBatchEntryDto> entries, long[] timestamps,
+                               Map<Long, List<Integer>> groups, List<LikeBatchResultDto> results, boolean dedup) {
+        int keyCount = dedup ? 4 : 3;
+        List<Integer> commandEntries = new ArrayList<>();
+        List<SegmentTree> commandTrees = new ArrayList<>();
+        List<byte[][]> commands = new ArrayList<>();
+        for (Map.Entry<Long, List<Integer>> group : groups.entrySet()) {
+            SegmentTree segmentTree = segmentTreeServiceImpl.getSegmentTree(group.getKey());
+            List<String> layoutArgs = segmentTree.getLayoutArgs();
+            byte[] rankingKey = bytes(RANKING_KEY_PREFIX + group.getKey());
+            byte[] segmentKey = bytes(segmentTree.getRedisKey());
+            byte[] versionKey = bytes(RANKING_VERSION_KEY_PREFIX + group.getKey());
+            byte[] likedKey = bytes(USER_LIKE_KEY_PREFIX + group.getKey());
+            byte[] updateSegment = bytes(segmentTree.isBuffered() ? "0" : "1");
+            for (Integer index : group.getValue()) {
+                LikeBatchEntryDto entry = entries.get(index);
+                byte[][] keysAndArgs = new byte[keyCount + layoutArgs.size() + 5][];
+                keysAndArgs[0] = rankingKey;
+                keysAndArgs[1] = segmentKey;
+                keysAndArgs[2] = versionKey;
+                if (dedup) {
+                    keysAndArgs[3] = likedKey;
+                }
+                keysAndArgs[keyCount] = bytes(String.valueOf(entry.getUserId()));
+                keysAndArgs[keyCount + 1] = bytes(String.valueOf(entry.getDelta()));
+                keysAndArgs[keyCount + 2] = bytes(String.valueOf(scoreCodec.timePart(timestamps[index])));
+                keysAndArgs[keyCount + 3] = updateSegment;
+                keysAndArgs[keyCount + 4] = bytes("0");
+                for (int j = 0; j < layoutArgs.size(); j++) {
+                    keysAndArgs[keyCount + 5 + j] = bytes(layoutArgs.get(j));
+                }
+                commandEntries.add(index);
+                commandTrees.add(segmentTree);
+                commands.add(keysAndArgs);
+            }
+        }
+
+        // 先加载脚本，保证管道中的EVALSHA不会因脚本缓存缺失而失败，再通过一次管道发送所有条目
+        byte[] script = bytes(likeScript.getScriptAsString());
+        String sha = stringRedisTemplate.execute(
+                (RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(script));
+        List<Object> replies;
+        try {
+            replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[][] keysAndArgs : commands) {
+                    connection.scriptingCommands().evalSha(sha, ReturnType.MULTI, keyCount, keysAndArgs);
+                }
+                return null;
+            });
+        } catch (RedisPipelineException e) {
+            // 单条命令失败不影响其他条目，失败条目的位置上是对应的异常
+            replies = e.getPipelineResult();
+        } catch (RedisConnectionFailureException e) {
+            // 未能获取连接，管道中的命令都未发送
+            throw e;
+        } catch (RuntimeException e) {
+            // 管道中的命令可能已部分执行，所有条目都按结果未知处理
+            log.error("批量点赞管道执行失败，{} 条点赞结果未知", commands.size(), e);
+            replies = Collections.nCopies(commands.size(), e);
+        }
+        log.info("批量点赞 {} 条，涉及 {} 个排行榜", commands.size(), groups.size());
+
+        List<Integer> retryable = new ArrayList<>();
+        for (int k = 0; k < commands.size(); k++) {
+            LikeBatchResultDto result = results.get(commandEntries.get(k));
+            Object reply = k < replies.size() ? replies.get(k) : null;
+            if (!(reply instanceof List<?> values) || values.size() != 3) {
+                if (reply instanceof Throwable e && isRejectedBeforeExecution(e)) {
+                    result.setMessage(e.getMessage());
+                    retryable.add(commandEntries.get(k));
+                } else if (reply instanceof Throwable e && isErrorReply(e)) {
+                    result.setMessage(e.getMessage());
+                } else {
+                    result.setMessage(UNKNOWN_RESULT + (reply instanceof Throwable e ? e.getMessage() : reply));
+                }
+                continue;
+            }
+            String oldValue = text(values.get(0));
+            String newValue = text(values.get(1));
+            if (newValue.isEmpty()) {
+                result.setMessage(DUPLICATE_LIKE);
+                continue;
+            }
+            long oldLikes = oldValue.isEmpty() ? 0 : ScoreCodec.likes(Double.parseDouble(oldValue));
+            long newLikes = ScoreCodec.likes(Double.parseDouble(newValue));
+            result.setSuccess(true);
+            result.setScore((double) newLikes);
+            // 点赞已写入Redis，之后的失败不能让调用方重试该条目
+            LikeBatchEntryDto entry = entries.get(commandEntries.get(k));
+            try {
+                // 缓冲模式下区间计数由本地更新，再批量回写Redis
+                SegmentTree segmentTree = commandTrees.get(k);
+                if (segmentTree.isBuffered()) {
+                    segmentTree.updateScore(oldLikes, newLikes);
+                }
+                persistLike(entry.getUserId(), entry.getRankingListId());
+            } catch (RuntimeException e) {
+                log.error("点赞已写入，更新线段树或持久化失败 - 排行榜: {}, 用户: {}",
+                        entry.getRankingListId(), entry.getUserId(), e);
+            }
+        }
+        return retryable;
+    }
+
+    /**
+     * 是否为Redis返回的错误回复，例如点赞数超过上限时点赞脚本返回的错误
+     */
+    private static boolean isErrorReply(Throwable e) {
+        return getErrorReply(e) != null;
+    }
+
+    /**
+     * 是否为Redis在执行脚本前拒绝命令的错误回复：脚本未缓存、正在执行其他脚本或正在加载数据，脚本没有执行
+     */
+    private static boolean isRejectedBeforeExecution(Throwable e) {
+        RedisCommandExecutionException reply = getErrorReply(e);
+        if (reply == null || reply.getMessage() == null) {
+            return false;
+        }
+        for (String prefix : REJECTED_BEFORE_EXECUTION) {
+            if (reply.getMessage().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RedisCommandExecutionException getErrorReply(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RedisCommandExecutionException reply) {
+                return reply;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 将热点用户在本地合并的点赞写入Redis
+     * 每个热点用户合并为一次积分增量，积分的时间部分取最后一次点赞的时间
+     */
+    @Scheduled(fixedDelayString = "${ranking.like.hot-window-ms:50}")
+    public void flushHotLikes() {
+        if (hotLikeAggregator == null) {
+            return;
+        }
+        List<LikeEvent> pending = hotLikeAggregator.drain(System.currentTimeMillis());
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<LikeEvent> failed;
+        try {
+            failed = applyLikeEvents(pending);
+        } catch (Exception e) {
+            // 抛出异常时管道尚未发送，所有合并更新都未写入
+            log.error("热点用户点赞回写失败，{} 条合并更新放回等待下次回写", pending.size(), e);
+            failed = pending;
+        }
+        // 点赞已被接受，确定未写入的合并更新放回本地，与之后的点赞合并后重新写入；
+        // 结果未知的合并更新可能已写入，不放回，避免重复计数
+        failed.forEach(hotLikeAggregator::requeue);
+    }
+
+    /**
+     * 通过一次Redis管道写入多条积分更新，被点赞脚本拒绝或结果未知的条目记录日志
+     * @return 确定未写入、可重试的失败条目，由调用方重新写入
+     * @throws RuntimeException 管道发送前失败，所有条目都未写入，调用方可以整体重试
+     */
+    private List<LikeEvent> applyLikeEvents(List<LikeEvent> events) {
+        List<LikeBatchEntryDto> entries = new ArrayList<>(events.size());
+        List<LikeBatchResultDto> results = new ArrayList<>(events.size());
+        Map<Long, List<Integer>> groups = new LinkedHashMap<>();
+        long[] timestamps = new long[events.size()];
+        for (int i = 0; i < events.size(); i++) {
+            LikeEvent event = events.get(i);
+            LikeBatchEntryDto entry = new LikeBatchEntryDto();
+            entry.setRankingListId(event.getRankingListId());
+            entry.setUserId(event.getUserId());
+            entry.setDelta(event.getIncrement());
+            entries.add(entry);
+            results.add(new LikeBatchResultDto());
+            timestamps[i] = event.getTimestamp();
+            groups.computeIfAbsent(event.getRankingListId(), k -> new ArrayList<>()).add(i);
+        }
+        List<Integer> retryable = pipelineLikes(entries, timestamps, groups, results, dedup);
+        List<LikeEvent> failed = new ArrayList<>(retryable.size());
+        for (Integer index : retryable) {
+            failed.add(events.get(index));
+        }
+        if (!failed.isEmpty()) {
+            log.warn("{} 条积分更新写入失败，等待重试，原因: {}", failed.size(), results.get(retryable.get(0)).getMessage());
+        }
+        for (int i = 0; i < results.size(); i++) {
+            if (DUPLICATE_LIKE.equals(results.get(i).getMessage())) {
+                log.debug("重复点赞已忽略 - 排行榜: {}, 用户: {}", entries.get(i).getRankingListId(), entries.get(i).getUserId());
+            } else if (!results.get(i).isSuccess() && !retryable.contains(i)) {
+                log.error("点赞写入失败 - 排行榜: {}, 用户: {}, 积分增量: {}, 原因: {}",
+                        entries.get(i).getRankingListId(), entries.get(i).getUserId(),
+                        entries.get(i).getDelta(), results.get(i).getMessage());
+            }
+        }
+        return failed;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 先写完异步队列中的点赞，再回写热点用户合并的点赞
+        if (likeIngestQueue != null) {
+            likeIngestQueue.shutdown(rankingConfig.getLike().getAsyncShutdownTimeoutMs());
+        }
+        if (hotLikeAggregator != null) {
+            flushHotLikes();
+            // 关闭时不再等待下次回写，仍写不进去的合并更新只能丢弃
+            for (LikeEvent event : hotLikeAggregator.drain(System.currentTimeMillis())) {
+                log.error("关闭时热点用户点赞回写失败，已丢弃 - 排行榜: {}, 用户: {}, 积分增量: {}",
+                        event.getRankingListId(), event.getUserId(), event.getIncrement());
+            }
+        }
+    }
+
+    @Override
+    public boolean submitLike(LikeDto likeDto) {
+        Long userId = UserContext.getUserId();
+        if (userId == null) {
+            throw new BusinessException(401, "User not logged in");
+        }
+        if (likeIngestQueue == null) {
+            if (likeDto.getRankingListId() == null) {
+                throw new BusinessException(400, "排行榜ID不能为空");
+            }
+            like(likeDto);
+            return true;
+        }
+        return enqueueLike(likeDto, userId);
+    }
+
+    /**
+     * 点赞放入异步队列，仅在启用异步点赞时调用
+     * @return 是否已接受，队列已满时返回false
+     */
+    boolean enqueueLike(LikeDto likeDto, Long userId) {
+        if (likeDto.getRankingListId() == null) {
+            throw new BusinessException(400, "排行榜ID不能为空");
+        }
+        long timestamp = System.currentTimeMillis();
+        if (hotLikeAggregator != null && hotLikeAggregator.offer(likeDto.getRankingListId(), userId, timestamp)) {
+            return true;
+        }
+        return likeIngestQueue.offer(new LikeEvent(likeDto.getRankingListId(), userId, 1, timestamp));
+    }
+
+    @Override
+    public boolean isAsyncIngest() {
+        return likeIngestQueue != null;
+    }
+
+    @Override
+    public Map<String, Object> getLikeStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hot", hotLikeAggregator != null ? hotLikeAggregator.getStats() : Map.of("hotThreshold", 0));
+        if (likeIngestQueue != null) {
+            stats.put("ingest", likeIngestQueue.getStats());
+        }
+        if (likeRecordWriter != null) {
+            stats.put("persist", likeRecordWriter.getStats());
+        }
+        if (rankingItemWriter != null) {
+            stats.put("itemSync", rankingItemWriter.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 点赞记录放入持久化队列，由LikeRecordWriter异步写入数据库；同时标记用户积分有变化，由RankingItemWriter同步到ranking_item表，
+     * 并通知前K名快照重建
+     */
+    private void persistLike(Long userId, Long rankingListId) {
+        if (likeRecordWriter != null) {
+            likeRecordWriter.enqueue(userId, rankingListId);
+        }
+        if (rankingItemWriter != null) {
+            rankingItemWriter.markDirty(rankingListId, userId);
+        }
+        if (topKSnapshotCache != null) {
+            topKSnapshotCache.markChanged(rankingListId);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 管道结果正常时已由序列化器转换为字符串，异常时为原始字节
+     */
+    private static String text(Object value) {
+        return value instanceof byte[] raw ? new String(raw, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    DefaultRedisScript<List<Object>> getLikeScript() {
+        return likeScript;
+    }
+
+    /**
+     * 点赞脚本的KEYS：排行榜、线段树、排行榜版本号，启用去重时加上点赞用户位图
+     */
+    List<String> likeKeys(Long rankingListId, SegmentTree segmentTree) {
+        String rankingKey = RANKING_KEY_PREFIX + rankingListId;
+        String versionKey = RANKING_VERSION_KEY_PREFIX + rankingListId;
+        return dedup
+                ? Arrays.asList(rankingKey, segmentTree.getRedisKey(), versionKey, USER_LIKE_KEY_PREFIX + rankingListId)
+                : Arrays.asList(rankingKey, segmentTree.getRedisKey(), versionKey);
+    }
+
+    /**
+     * 单次点赞的脚本参数
+     */
+    List<String> likeArgs(Long userId, long timestamp, SegmentTree segmentTree, boolean withRank) {
+        List<String> args = new ArrayList<>(segmentTree.getLayoutArgs().size() + 5);
+        args.add(String.valueOf(userId));
+        args.add("1");
+        args.add(String.valueOf(scoreCodec.timePart(timestamp)));
+        args.add(segmentTree.isBuffered() ? "0" : "1");
+        args.add(withRank ? "1" : "0");
+        args.addAll(segmentTree.getLayoutArgs());
+        return args;
+    }
+
+    /**
+     * 处理点赞脚本的返回结果：更新本地缓冲的区间计数并记录点赞
+     * @return 点赞用户的最新点赞数，withRank为true时包含排名；启用去重且用户已点赞过时返回null
+     */
+    RankingItem completeLike(Long userId, Long rankingListId, SegmentTree segmentTree, List<?> result, boolean withRank) {
+        if (result == null || result.size() != 3) {
+            throw new RuntimeException("点赞脚本返回结果异常: " + result);
+        }
+        String oldValue = String.valueOf(result.get(0));
+        String newValue = String.valueOf(result.get(1));
+        if (newValue.isEmpty()) {
+            log.info("用户 {} 已点赞过排行榜 {}，忽略重复点赞", userId, rankingListId);
+            return null;
+        }
+        long oldLikes = oldValue.isEmpty() ? 0 : ScoreCodec.likes(Double.parseDouble(oldValue));
+        long newLikes = ScoreCodec.likes(Double.parseDouble(newValue));
+        log.info("用户 {} 在排行榜 {} 中的最新点赞数: {}", userId, rankingListId, newLikes);
+
+        // 缓冲模式下区间计数由本地更新，再批量回写Redis
+        if (segmentTree.isBuffered()) {
+            segmentTree.updateScore(oldLikes, newLikes);
+        }
+        persistLike(userId, rankingListId);
+
+        RankingItem item = new RankingItem();
+        item.setUserId(userId);
+        item.setRankingListId(rankingListId);
+        item.setScore((double) newLikes);
+        if (withRank) {
+            // 排名从1开始，所以需要+1
+            item.setRanking(((Number) result.get(2)).longValue() + 1);
+            item.setRankErrorBound(0L);
+        }
+        return item;
+    }
+
+    /**
+     * 执行点赞脚本
+     * @param withRank 是否在同一次脚本调用中查询点赞后的排名
+     * @return 点赞用户的最新积分，withRank为true时包含排名；启用去重且用户已点赞过时返回null
+     */
+    private RankingItem applyLike(LikeDto likeDto, boolean withRank) {
         try {
             Long userId = UserContext.getUserId();
             if (userId == null) {
@@ -58,25 +626,15 @@ public class LikeServiceImpl implements LikeService {
             String rankingKey = RANKING_KEY_PREFIX + likeDto.getRankingListId();
             log.info("用户 {} 点赞排行榜 {}, key: {}", userId, likeDto.getRankingListId(), rankingKey);
 
-            Double oldscore = redisTemplate.opsForZSet().score(rankingKey, userId);
-            // 准备Lua脚本参数
-            String userIdStr = String.valueOf(userId);
-            List<String> keys = Arrays.asList(rankingKey, userIdStr);
-            // 确保score是数字类型，使用1.0而不是1
-            List<Object> args = Arrays.asList(1.0, System.currentTimeMillis());
+            // 积分更新和线段树区间计数更新在同一个脚本中完成，新旧积分由脚本原子地计算
+            SegmentTree segmentTree = segmentTreeServiceImpl.getSegmentTree(likeDto.getRankingListId());
+            List<String> keys = likeKeys(likeDto.getRankingListId(), segmentTree);
+            List<String> args = likeArgs(userId, System.currentTimeMillis(), segmentTree, withRank);
             log.debug("Lua脚本参数 - keys: {}, args: {}", keys, args);
 
             // 执行Lua脚本
-            Long result = redisTemplate.execute(redisScript, keys, args.toArray());
-            log.info("更新排行榜结果: {}", result);
-
-            // 验证分数是否更新成功
-            Double newscore = redisTemplate.opsForZSet().score(rankingKey, userId);
-            log.info("用户 {} 在排行榜 {} 中的最新分数: {}", userId, likeDto.getRankingListId(), newscore);
-
-            segmentTreeServiceImpl.updateUserScore(userId,oldscore,newscore);
-
-            return true;
+            List<?> result = stringRedisTemplate.execute(likeScript, keys, args.toArray());
+            return completeLike(userId, likeDto.getRankingListId(), segmentTree, result, withRank);
         } catch (RedisSystemException e) {
             log.error("Redis操作失败", e);
             throw new RuntimeException("点赞操作失败: " + e.getMessage(), e);
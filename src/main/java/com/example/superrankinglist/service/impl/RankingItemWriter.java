@@ -0,0 +1,262 @@
+package com.example.superrankinglist.service.impl;
+
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.mapper.RankingItemMapper;
+import com.example.superrankinglist.pojo.RankingItem;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+
+/**
+ * 排行榜项目同步
+ * 记录每个排行榜中积分有变化的用户，定期将其在Redis中的积分和排名批量写入ranking_item表。
+ * 排名按分块读取有序集合（ZREVRANGE WITHSCORES）后由位置得到，不对每个用户单独执行ZREVRANK。
+ * 批量写入因约束错误失败时逐条写入，丢弃出错的记录，其他失败整批重新标记，下次同步时重试
+ */
+@Log4j2
+@Component
+public class RankingItemWriter {
+
+    private final RedisTemplate<String, String> stringRedisTemplate;
+    private final RankingItemMapper rankingItemMapper;
+    private final RankingConfig.ItemSync config;
+
+    /**
+     * 排行榜ID -> 积分有变化的用户ID
+     * 用户集合只在compute中修改，同步时整体取出，不会丢失并发标记的用户
+     */
+    private final ConcurrentHashMap<Long, Set<Long>> dirtyUsers = new ConcurrentHashMap<>();
+
+    /**
+     * 同一时间只有一个线程执行同步
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private final LongAdder synced = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public RankingItemWriter(RedisTemplate<String, String> stringRedisTemplate,
+                             RankingItemMapper rankingItemMapper,
+                             RankingConfig rankingConfig) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.rankingItemMapper = rankingItemMapper;
+        this.config = rankingConfig.getItemSync();
+    }
+
+    /**
+     * 标记用户在排行榜中的积分有变化
+     */
+    public void markDirty(Long rankingListId, Long userId) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        dirtyUsers.compute(rankingListId, (id, users) -> {
+            if (users == null) {
+                users = new HashSet<>();
+            }
+            users.add(userId);
+            return users;
+        });
+    }
+
+    private void markDirty(Long rankingListId, Set<Long> userIds) {
+        dirtyUsers.compute(rankingListId, (id, users) -> {
+            if (users == null) {
+                return userIds;
+            }
+            users.addAll(userIds);
+            return users;
+        });
+    }
+
+    /**
+     * 同步所有有变化的排行榜
+     */
+    @Scheduled(fixedDelayString = "${ranking.item-sync.interval-ms:5000}")
+    public void sync() {
+        if (!config.isEnabled() || !syncLock.tryLock()) {
+            return;
+        }
+        try {
+            syncAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void syncAll() {
+        for (Long rankingListId : new ArrayList<>(dirtyUsers.keySet())) {
+            Set<Long> userIds = dirtyUsers.remove(rankingListId);
+            if (userIds == null || userIds.isEmpty()) {
+                continue;
+            }
+            try {
+                syncRankingList(rankingListId, userIds);
+            } catch (Exception e) {
+                // 写入是幂等的，失败时整批重新标记，下次同步时重试
+                failed.increment();
+                markDirty(rankingListId, userIds);
+                log.error("同步排行榜 {} 的积分到数据库失败，{} 个用户下次重试", rankingListId, userIds.size(), e);
+            }
+        }
+    }
+
+    /**
+     * 从排行榜头部开始分块读取有序集合，找到所有有变化的用户后停止
+     */
+    private void syncRankingList(Long rankingListId, Set<Long> userIds) {
+        String rankingKey = RANKING_KEY_PREFIX + rankingListId;
+        Map<String, Long> pending = new HashMap<>();
+        for (Long userId : userIds) {
+            pending.put(String.valueOf(userId), userId);
+        }
+
+        ZSetOperations<String, String> zSetOps = stringRedisTemplate.opsForZSet();
+        int chunkSize = config.getScanChunkSize();
+        List<RankingItem> batch = new ArrayList<>(config.getBatchSize());
+        for (long start = 0; !pending.isEmpty(); start += chunkSize) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = zSetOps.reverseRangeWithScores(rankingKey, start, start + chunkSize - 1);
+            if (tuples == null || tuples.isEmpty()) {
+                break;
+            }
+            long ranking = start;
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                ranking++;
+                Long userId = pending.remove(tuple.getValue());
+                if (userId == null) {
+                    continue;
+                }
+                RankingItem item = new RankingItem();
+                item.setRankingListId(rankingListId);
+                item.setUserId(userId);
+                item.setScore((double) ScoreCodec.likes(tuple.getScore()));
+                item.setRanking(ranking);
+                batch.add(item);
+                if (batch.size() >= config.getBatchSize()) {
+                    write(batch);
+                    batch.clear();
+                }
+            }
+            if (tuples.size() < chunkSize) {
+                break;
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(batch);
+        }
+
+        // 分块读取期间用户的排名可能上升到已读取的区间，仍在排行榜中的用户留到下次同步
+        if (!pending.isEmpty()) {
+            Set<Long> retry = stillRanked(rankingKey, pending);
+            if (!retry.isEmpty()) {
+                markDirty(rankingListId, retry);
+            }
+        }
+    }
+
+    /**
+     * 通过一次Redis管道查询用户的积分，返回仍在排行榜中的用户
+     * @param members 用户ID的字符串形式 -> 用户ID
+     */
+    private Set<Long> stillRanked(String rankingKey, Map<String, Long> members) {
+        List<String> keys = new ArrayList<>(members.keySet());
+        byte[] rawKey = rankingKey.getBytes(StandardCharsets.UTF_8);
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String member : keys) {
+                connection.zSetCommands().zScore(rawKey, member.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        Set<Long> ranked = new HashSet<>();
+        for (int i = 0; i < keys.size() && i < scores.size(); i++) {
+            if (scores.get(i) != null) {
+                ranked.add(members.get(keys.get(i)));
+            }
+        }
+        return ranked;
+    }
+
+    private void write(List<RankingItem> items) {
+        try {
+            rankingItemMapper.upsertScores(items);
+        } catch (RuntimeException e) {
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
+            // 约束错误重试也不会成功，逐条写入以隔离出错的记录
+            writeOneByOne(items);
+            return;
+        }
+        synced.add(items.size());
+    }
+
+    private void writeOneByOne(List<RankingItem> items) {
+        for (RankingItem item : items) {
+            try {
+                rankingItemMapper.upsertScores(List.of(item));
+                synced.increment();
+            } catch (RuntimeException e) {
+                if (!isConstraintViolation(e)) {
+                    throw e;
+                }
+                dropped.increment();
+                log.error("排行榜项目写入失败，已丢弃 - 排行榜: {}, 用户: {}", item.getRankingListId(), item.getUserId(), e);
+            }
+        }
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        // 等待正在执行的同步结束后再同步一次
+        syncLock.lock();
+        try {
+            syncAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * 获取同步统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("dirtyRankingLists", dirtyUsers.size());
+        stats.put("synced", synced.sum());
+        stats.put("failed", failed.sum());
+        stats.put("dropped", dropped.sum());
+        return stats;
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.superrankinglist.service.impl;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.common.FuzzyRank;
+import com.example.superrankinglist.common.ScoreCodec;
 import com.example.superrankinglist.dto.LikeDto;
 import com.example.superrankinglist.dto.RankingListQueryDto;
 import com.example.superrankinglist.mapper.RankingItemMapper;
@@ -12,6 +15,7 @@ import com.example.superrankinglist.service.RankingListService;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -20,6 +24,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -28,6 +33,7 @@ import java.util.List;
 import java.util.Set;
 
 import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.RANKING_VERSION_KEY_PREFIX;
 import static com.example.superrankinglist.common.RedisKey.SEGMENT_KEY_PREFIX;
 
 
@@ -38,6 +44,11 @@ import static com.example.superrankinglist.common.RedisKey.SEGMENT_KEY_PREFIX;
 @Service
 public class RankingListServiceImpl implements RankingListService {
 
+    /**
+     * 排行榜只显示前10000名
+     */
+    static final long MAX_DISPLAY_RANK = 10000;
+
     @Autowired
     private RankingItemMapper rankingItemMapper;
 
@@ -47,12 +58,21 @@ public class RankingListServiceImpl implements RankingListService {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private RedisTemplate<String, String> stringRedisTemplate;
+
     @Autowired
     private UserMapper userMapper;
 
     @Autowired
     private SegmentTreeServiceImpl segmentTreeService;
 
+    /**
+     * 前K名快照，未注入时所有查询都访问Redis
+     */
+    @Autowired(required = false)
+    private TopKSnapshotCache topKSnapshotCache;
+
 
     @Autowired
     private LikeServiceImpl likeService;
@@ -79,70 +99,62 @@ public class RankingListServiceImpl implements RankingListService {
         log.info("查询排行榜，key: {}", rankingKey);
 
         try {
-            // 计算分页参数
-            long start;
-            long end;
-            if (queryDto.getPageNum() == 0) {
-                // 不分页时，获取完整的排行榜数据
-                start = 0;
-                end = -1;
-            } else {
-                // 分页时，获取指定区间的数据
-                start = (long) (queryDto.getPageNum() - 1) * queryDto.getPageSize();
-                end = start + queryDto.getPageSize() - 1;
-            }
+            // 计算分页参数，只显示前MAX_DISPLAY_RANK名的数据，查询范围直接截断到该名次
+            long start = rangeStart(queryDto);
+            long end = rangeEnd(queryDto);
             log.info("分页参数 - start: {}, end: {}", start, end);
 
-            // 使用ZREVRANGE获取排行榜数据
-            Set<ZSetOperations.TypedTuple<Object>> rankingData = redisTemplate.opsForZSet()
-                    .reverseRangeWithScores(rankingKey, start, end);
-            log.info("从Redis获取到的排行榜数据: {}", rankingData);
-
-            if (rankingData == null || rankingData.isEmpty()) {
-                log.info("Redis中没有找到排行榜数据");
-                return new Page<>(queryDto.getPageNum(), queryDto.getPageSize());
+            Page<RankingItem> page = new Page<>(queryDto.getPageNum(), queryDto.getPageSize());
+            if (start > end) {
+                return page;
             }
 
-            // 获取总记录数
-            Long total = redisTemplate.opsForZSet().size(rankingKey);
-            log.info("排行榜总记录数: {}", total);
-
-            // 转换数据
-            List<RankingItem> items = new ArrayList<>();
-            for (ZSetOperations.TypedTuple<Object> tuple : rankingData) {
-                Object value = tuple.getValue();
-                if (value == null) {
-                    continue;
+            // 落在前K名快照范围内时直接由快照组装
+            if (topKSnapshotCache != null) {
+                Page<RankingItem> cached = topKSnapshotCache.getPage(queryDto.getRankingListId(), start, end,
+                        queryDto.getPageNum(), queryDto.getPageSize());
+                if (cached != null) {
+                    return cached;
                 }
+            }
 
-                String userId = String.valueOf(value);
-                Double score = tuple.getScore();
-
-                // 获取用户在整个排行榜中的真实排名
-                Long rank = redisTemplate.opsForZSet().reverseRank(rankingKey, Long.valueOf(userId));
-                log.debug("查询用户排名 - userId: {}, rank: {}", userId, rank);
+            // ZREVRANGE WITHSCORES和ZCARD通过一次管道发送
+            byte[] rawKey = rankingKey.getBytes(StandardCharsets.UTF_8);
+            List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.zSetCommands().zRevRangeWithScores(rawKey, start, end);
+                connection.zSetCommands().zCard(rawKey);
+                return null;
+            });
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> rankingData = (Set<ZSetOperations.TypedTuple<String>>) replies.get(0);
+            Long total = (Long) replies.get(1);
+            log.info("排行榜总记录数: {}", total);
 
-                // 只显示前10000名的数据
-                if (rank != null && rank >= 10000) {
-                    continue;
-                }
+            if (rankingData == null || rankingData.isEmpty()) {
+                log.info("Redis中没有找到排行榜数据");
+                return page;
+            }
 
+            // 排名由成员在返回结果中的位置得到：ZREVRANGE与ZREVRANK的顺序一致，分数相同的成员按成员倒序排列，
+            // 因此 start + 下标 就是ZREVRANK返回的排名
+            List<RankingItem> items = new ArrayList<>(rankingData.size());
+            long rank = start;
+            for (ZSetOperations.TypedTuple<String> tuple : rankingData) {
                 RankingItem item = new RankingItem();
-                // 确保用户ID格式一致
-                item.setUserId(Long.valueOf(userId));
-                item.setScore(score != null ? score : 0.0);
+                item.setUserId(Long.valueOf(tuple.getValue()));
+                // 显示解码后的点赞数
+                item.setScore((double) ScoreCodec.likes(tuple.getScore()));
                 item.setRankingListId(queryDto.getRankingListId());
                 // 排名从1开始，所以需要+1
-                item.setRanking(rank != null ? rank + 1 : 0L);
+                item.setRanking(rank + 1);
+                item.setRankErrorBound(0L);
                 items.add(item);
+                rank++;
             }
 
-            // 创建分页对象
-            Page<RankingItem> page = new Page<>(queryDto.getPageNum(), queryDto.getPageSize());
             page.setRecords(items);
-            // 限制总数为10000
-            page.setTotal(Math.min(total != null ? total : 0, 10000));
-
+            // 限制总数为MAX_DISPLAY_RANK
+            page.setTotal(Math.min(total != null ? total : 0, MAX_DISPLAY_RANK));
             return page;
         } catch (Exception e) {
             log.error("查询排行榜失败", e);
@@ -150,6 +162,53 @@ public class RankingListServiceImpl implements RankingListService {
         }
     }
 
+    @Override
+    public CachedPage getCachedPage(RankingListQueryDto queryDto) {
+        if (topKSnapshotCache == null || queryDto == null || queryDto.getRankingListId() == null) {
+            return null;
+        }
+        long start = rangeStart(queryDto);
+        long end = rangeEnd(queryDto);
+        if (start > end) {
+            return null;
+        }
+        return topKSnapshotCache.getCachedPage(queryDto.getRankingListId(), start, end,
+                queryDto.getPageNum(), queryDto.getPageSize());
+    }
+
+    @Override
+    public long getVersion(Long rankingListId) {
+        // 有前K名快照时使用快照的版本号，不访问Redis
+        if (topKSnapshotCache != null) {
+            Long version = topKSnapshotCache.getVersion(rankingListId);
+            if (version != null) {
+                return version;
+            }
+        }
+        return TopKSnapshotCache.parseVersion(stringRedisTemplate.opsForValue().get(RANKING_VERSION_KEY_PREFIX + rankingListId));
+    }
+
+    /**
+     * 查询范围的起始名次（从0开始），页码为0时表示不分页
+     */
+    static long rangeStart(RankingListQueryDto queryDto) {
+        if (queryDto.getPageNum() == 0) {
+            return 0;
+        }
+        return (long) (queryDto.getPageNum() - 1) * queryDto.getPageSize();
+    }
+
+    /**
+     * 查询范围的结束名次（从0开始，包含），截断到第MAX_DISPLAY_RANK名
+     */
+    static long rangeEnd(RankingListQueryDto queryDto) {
+        if (queryDto.getPageNum() == 0) {
+            // 不分页时，获取完整的排行榜数据
+            return MAX_DISPLAY_RANK - 1;
+        }
+        return Math.min(rangeStart(queryDto) + queryDto.getPageSize() - 1, MAX_DISPLAY_RANK - 1);
+    }
+
     /**
      * 获取用户的排名和积分
      *
@@ -190,12 +249,13 @@ public class RankingListServiceImpl implements RankingListService {
                 }
 
                 // 使用线段树获取粗略排名
-                Long fuzzyRank = segmentTreeService.getUserRank(score);
-                log.info("用户 {} 的粗略排名为: {}", userId, fuzzyRank);
+                FuzzyRank fuzzyRank = segmentTreeService.getUserFuzzyRank(rankingListId, score);
+                log.info("用户 {} 的粗略排名为: {}，误差上界: {}", userId, fuzzyRank.getRank(), fuzzyRank.getErrorBound());
 
-                item.setScore(score);
+                item.setScore((double) ScoreCodec.likes(score));
                 // 排名从1开始，所以需要+1
-                item.setRanking(fuzzyRank + 1);
+                item.setRanking(fuzzyRank.getRank() + 1);
+                item.setRankErrorBound(fuzzyRank.getErrorBound());
                 return item;
             }
 
@@ -203,9 +263,10 @@ public class RankingListServiceImpl implements RankingListService {
             Long rank = ((Number) result.get(0)).longValue();
             Double score = ((Number) result.get(1)).doubleValue();
 
-            item.setScore(score);
+            item.setScore((double) ScoreCodec.likes(score));
             // 排名从1开始，所以需要+1
             item.setRanking(rank + 1);
+            item.setRankErrorBound(0L);
 
             return item;
         } catch (Exception e) {
@@ -0,0 +1,121 @@
+package com.example.superrankinglist.service.impl;
+
+import com.example.superrankinglist.common.BusinessException;
+import com.example.superrankinglist.dto.LikeBatchEntryDto;
+import com.example.superrankinglist.dto.LikeBatchResultDto;
+import com.example.superrankinglist.dto.LikeCheckDto;
+import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.pojo.RankingItem;
+import com.example.superrankinglist.service.ReactiveLikeService;
+import com.example.superrankinglist.service.SegmentTree;
+import com.example.superrankinglist.utils.ReactiveUserContext;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+import static com.example.superrankinglist.common.RedisKey.USER_LIKE_KEY_PREFIX;
+
+/**
+ * 响应式点赞服务实现类
+ * 点赞脚本、去重、热点用户合并、异步队列和持久化与LikeServiceImpl共用，
+ * 只是脚本通过ReactiveStringRedisTemplate执行，等待Redis返回时不占用线程
+ */
+@Log4j2
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveLikeServiceImpl implements ReactiveLikeService {
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private LikeServiceImpl likeService;
+
+    @Autowired
+    private SegmentTreeServiceImpl segmentTreeServiceImpl;
+
+    @Override
+    public Mono<Boolean> like(LikeDto likeDto) {
+        return currentUserId().flatMap(userId -> {
+            // 热点用户的点赞先在本地合并，由LikeServiceImpl定期写入
+            if (likeService.offerHotLike(likeDto.getRankingListId(), userId)) {
+                return Mono.just(true);
+            }
+            return applyLike(likeDto, userId, false).hasElement();
+        });
+    }
+
+    @Override
+    public Mono<RankingItem> likeWithRank(LikeDto likeDto) {
+        return currentUserId()
+                .flatMap(userId -> applyLike(likeDto, userId, true))
+                .switchIfEmpty(Mono.error(() -> new BusinessException(400, LikeServiceImpl.DUPLICATE_LIKE)));
+    }
+
+    @Override
+    public Mono<Boolean> checkLiked(LikeCheckDto likeCheckDto) {
+        return currentUserId().flatMap(userId -> reactiveStringRedisTemplate.opsForValue()
+                .getBit(USER_LIKE_KEY_PREFIX + likeCheckDto.getRankingListId(), userId));
+    }
+
+    @Override
+    public Mono<List<LikeBatchResultDto>> likeBatch(List<LikeBatchEntryDto> entries) {
+        // 批量点赞已通过一次管道发送，整体放到弹性线程池执行，不阻塞事件循环
+        return Mono.fromCallable(() -> likeService.likeBatch(entries))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Boolean> submitLike(LikeDto likeDto) {
+        if (!likeService.isAsyncIngest()) {
+            return like(likeDto);
+        }
+        return currentUserId().map(userId -> likeService.enqueueLike(likeDto, userId));
+    }
+
+    private Mono<Long> currentUserId() {
+        return ReactiveUserContext.getUserId()
+                .switchIfEmpty(Mono.error(() -> new BusinessException(401, "User not logged in")));
+    }
+
+    /**
+     * 执行点赞脚本
+     * @return 点赞用户的最新积分，withRank为true时包含排名；启用去重且用户已点赞过时为空
+     */
+    private Mono<RankingItem> applyLike(LikeDto likeDto, Long userId, boolean withRank) {
+        Long rankingListId = likeDto.getRankingListId();
+        if (rankingListId == null) {
+            return Mono.error(new BusinessException(400, "排行榜ID不能为空"));
+        }
+        return getSegmentTree(rankingListId).flatMap(segmentTree -> {
+            List<String> keys = likeService.likeKeys(rankingListId, segmentTree);
+            List<String> args = likeService.likeArgs(userId, System.currentTimeMillis(), segmentTree, withRank);
+            log.debug("Lua脚本参数 - keys: {}, args: {}", keys, args);
+            // 脚本返回的列表作为一个元素发出；缓冲区间计数达到阈值时completeLike会同步回写Redis，
+            // 切换到弹性线程池执行，不阻塞Lettuce的事件循环
+            return reactiveStringRedisTemplate.execute(likeService.getLikeScript(), keys, args)
+                    .next()
+                    .publishOn(Schedulers.boundedElastic())
+                    .flatMap(result -> Mono.justOrEmpty(
+                            likeService.completeLike(userId, rankingListId, segmentTree, result, withRank)));
+        });
+    }
+
+    /**
+     * 获取线段树，首次加载需要读取Redis，放到弹性线程池执行
+     */
+    private Mono<SegmentTree> getSegmentTree(Long rankingListId) {
+        SegmentTree segmentTree = segmentTreeServiceImpl.getLoadedSegmentTree(rankingListId);
+        if (segmentTree != null) {
+            return Mono.just(segmentTree);
+        }
+        return Mono.fromCallable(() -> segmentTreeServiceImpl.getSegmentTree(rankingListId))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
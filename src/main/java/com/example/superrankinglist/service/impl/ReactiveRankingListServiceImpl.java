@@ -0,0 +1,171 @@
+package com.example.superrankinglist.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.common.FuzzyRank;
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.dto.RankingListQueryDto;
+import com.example.superrankinglist.pojo.RankingItem;
+import com.example.superrankinglist.service.ReactiveRankingListService;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.RANKING_VERSION_KEY_PREFIX;
+
+/**
+ * 响应式排行榜服务实现类
+ */
+@Log4j2
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRankingListServiceImpl implements ReactiveRankingListService {
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private SegmentTreeServiceImpl segmentTreeService;
+
+    @Autowired
+    private TopKSnapshotCache topKSnapshotCache;
+
+    @SuppressWarnings("rawtypes")
+    private DefaultRedisScript<List> getUserRankScript;
+
+    @PostConstruct
+    public void init() {
+        getUserRankScript = new DefaultRedisScript<>();
+        getUserRankScript.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/get_user_rank.lua")));
+        getUserRankScript.setResultType(List.class);
+    }
+
+    @Override
+    public Mono<Page<RankingItem>> queryRankingList(RankingListQueryDto queryDto) {
+        if (queryDto == null || queryDto.getRankingListId() == null) {
+            return Mono.error(new IllegalArgumentException("查询参数不能为空"));
+        }
+
+        String rankingKey = RANKING_KEY_PREFIX + queryDto.getRankingListId();
+        // 只显示前MAX_DISPLAY_RANK名的数据，查询范围直接截断到该名次
+        long start = RankingListServiceImpl.rangeStart(queryDto);
+        long end = RankingListServiceImpl.rangeEnd(queryDto);
+        log.info("查询排行榜，key: {}, start: {}, end: {}", rankingKey, start, end);
+        if (start > end) {
+            return Mono.just(new Page<>(queryDto.getPageNum(), queryDto.getPageSize()));
+        }
+        // 落在前K名快照范围内时直接由快照组装
+        Page<RankingItem> cached = topKSnapshotCache.getPage(queryDto.getRankingListId(), start, end,
+                queryDto.getPageNum(), queryDto.getPageSize());
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+
+        // 分页数据和总数两条命令同时发出，在同一个连接上流水线执行；排名由分页位置得到，无需逐个查询
+        Mono<List<ZSetOperations.TypedTuple<String>>> rankingData = reactiveStringRedisTemplate.opsForZSet()
+                .reverseRangeWithScores(rankingKey, Range.closed(start, end))
+                .collectList();
+        Mono<Long> total = reactiveStringRedisTemplate.opsForZSet().size(rankingKey);
+        return Mono.zip(rankingData, total).map(result -> {
+            Page<RankingItem> page = new Page<>(queryDto.getPageNum(), queryDto.getPageSize());
+            if (result.getT1().isEmpty()) {
+                log.info("Redis中没有找到排行榜数据");
+                return page;
+            }
+            List<RankingItem> items = new ArrayList<>(result.getT1().size());
+            long rank = start;
+            for (ZSetOperations.TypedTuple<String> tuple : result.getT1()) {
+                RankingItem item = new RankingItem();
+                item.setUserId(Long.valueOf(tuple.getValue()));
+                // 显示解码后的点赞数
+                item.setScore((double) ScoreCodec.likes(tuple.getScore()));
+                item.setRankingListId(queryDto.getRankingListId());
+                // 排名从1开始，所以需要+1
+                item.setRanking(rank + 1);
+                item.setRankErrorBound(0L);
+                items.add(item);
+                rank++;
+            }
+            page.setRecords(items);
+            // 限制总数为MAX_DISPLAY_RANK
+            page.setTotal(Math.min(result.getT2(), RankingListServiceImpl.MAX_DISPLAY_RANK));
+            return page;
+        });
+    }
+
+    @Override
+    public CachedPage getCachedPage(RankingListQueryDto queryDto) {
+        if (queryDto == null || queryDto.getRankingListId() == null) {
+            return null;
+        }
+        long start = RankingListServiceImpl.rangeStart(queryDto);
+        long end = RankingListServiceImpl.rangeEnd(queryDto);
+        if (start > end) {
+            return null;
+        }
+        return topKSnapshotCache.getCachedPage(queryDto.getRankingListId(), start, end,
+                queryDto.getPageNum(), queryDto.getPageSize());
+    }
+
+    @Override
+    public Mono<Long> getVersion(Long rankingListId) {
+        // 有前K名快照时使用快照的版本号，不访问Redis
+        Long version = topKSnapshotCache.getVersion(rankingListId);
+        if (version != null) {
+            return Mono.just(version);
+        }
+        return reactiveStringRedisTemplate.opsForValue().get(RANKING_VERSION_KEY_PREFIX + rankingListId)
+                .map(TopKSnapshotCache::parseVersion)
+                .defaultIfEmpty(0L);
+    }
+
+    @Override
+    public Mono<RankingItem> getUserRankAndScore(Long rankingListId, Long userId) {
+        if (rankingListId == null || userId == null) {
+            return Mono.error(new IllegalArgumentException("排行榜ID和用户ID不能为空"));
+        }
+
+        String rankingKey = RANKING_KEY_PREFIX + rankingListId;
+        return reactiveStringRedisTemplate.execute(getUserRankScript, List.of(rankingKey, userId.toString()), Collections.emptyList())
+                .next()
+                .flatMap(result -> {
+                    RankingItem item = new RankingItem();
+                    item.setUserId(userId);
+                    item.setRankingListId(rankingListId);
+                    if (result.size() == 2 && ((Number) result.get(0)).longValue() >= 0) {
+                        item.setScore((double) ScoreCodec.likes(Double.parseDouble(String.valueOf(result.get(1)))));
+                        // 排名从1开始，所以需要+1
+                        item.setRanking(((Number) result.get(0)).longValue() + 1);
+                        item.setRankErrorBound(0L);
+                        return Mono.just(item);
+                    }
+
+                    // zset中没有精确排名时，使用线段树获取粗略排名；线段树可能需要读取Redis，放到弹性线程池执行
+                    log.info("在zset中未找到用户 {} 的排名，尝试从线段树获取粗略排名", userId);
+                    return reactiveStringRedisTemplate.opsForZSet().score(rankingKey, userId.toString())
+                            .publishOn(Schedulers.boundedElastic())
+                            .map(score -> {
+                                FuzzyRank fuzzyRank = segmentTreeService.getUserFuzzyRank(rankingListId, score);
+                                item.setScore((double) ScoreCodec.likes(score));
+                                item.setRanking(fuzzyRank.getRank() + 1);
+                                item.setRankErrorBound(fuzzyRank.getErrorBound());
+                                return item;
+                            });
+                });
+    }
+}
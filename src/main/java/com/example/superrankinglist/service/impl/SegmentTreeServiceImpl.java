@@ -1,111 +1,507 @@
 package com.example.superrankinglist.service.impl;
 
-import com.example.superrankinglist.common.SegmentTreeNode;
+import com.example.superrankinglist.common.FuzzyRank;
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
 import com.example.superrankinglist.service.SegmentTree;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
 import static com.example.superrankinglist.common.RedisKey.SEGMENT_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.SEGMENT_LOCK_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.SEGMENT_META_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.SEGMENT_RETIRED_KEY;
 
 @Slf4j
 @Service
 public class SegmentTreeServiceImpl {
-    private final SegmentTree segmentTree;
     private final RedisTemplate<String, String> redisTemplate;
+    private final RankingConfig rankingConfig;
     private static final double MIN_SCORE = 0.0;
     private static final double MAX_SCORE = 1000000.0;
 
-    public SegmentTreeServiceImpl(RedisTemplate<String, String> redisTemplate) {
+    /**
+     * 线段树元数据中的字段
+     */
+    private static final String META_VERSION = "version";
+    private static final String META_LATEST_VERSION = "latestVersion";
+    private static final String META_BOUNDS = "bounds";
+    private static final String META_REBALANCED_AT = "rebalancedAt";
+
+    /**
+     * 等待其他实例初始化线段树时，两次读取元数据之间的间隔（毫秒）
+     */
+    private static final long LOAD_RETRY_INTERVAL_MS = 50;
+
+    private static final DefaultRedisScript<Long> SWITCH_VERSION_SCRIPT = new DefaultRedisScript<>();
+    private static final DefaultRedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        SWITCH_VERSION_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/switch_segment_version.lua")));
+        SWITCH_VERSION_SCRIPT.setResultType(Long.class);
+        RELEASE_LOCK_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/release_lock.lua")));
+        RELEASE_LOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 各排行榜的线段树，首次使用时加载，超过上限时淘汰最久未使用的线段树
+     */
+    private final Map<Long, TreeEntry> segmentTrees = new ConcurrentHashMap<>();
+
+    /**
+     * 加载和移除线段树时按排行榜ID分段加锁，同一排行榜只加载一次。
+     * 加载需要读取Redis，不在computeIfAbsent中进行，否则虚拟线程会在持有Map内部监视器时阻塞并占住载体线程
+     */
+    private final ReentrantLock[] loadLocks = new ReentrantLock[64];
+
+    public SegmentTreeServiceImpl(RedisTemplate<String, String> redisTemplate, RankingConfig rankingConfig) {
         this.redisTemplate = redisTemplate;
-        this.segmentTree = new SegmentTree(SEGMENT_KEY_PREFIX+ 1, redisTemplate);
+        this.rankingConfig = rankingConfig;
+        for (int i = 0; i < loadLocks.length; i++) {
+            loadLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 获取已加载的线段树，未加载时返回null，不访问Redis
+     */
+    public SegmentTree getLoadedSegmentTree(Long rankingListId) {
+        TreeEntry entry = segmentTrees.get(rankingListId);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccessTime = System.nanoTime();
+        return entry.tree;
+    }
+
+    /**
+     * 获取排行榜对应的线段树，不存在时加载
+     */
+    public SegmentTree getSegmentTree(Long rankingListId) {
+        TreeEntry entry = segmentTrees.get(rankingListId);
+        if (entry == null) {
+            ReentrantLock lock = getLoadLock(rankingListId);
+            lock.lock();
+            try {
+                entry = segmentTrees.get(rankingListId);
+                if (entry == null) {
+                    entry = loadSegmentTree(rankingListId);
+                    segmentTrees.put(rankingListId, entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+            evictIfNecessary();
+        }
+        entry.lastAccessTime = System.nanoTime();
+        return entry.tree;
     }
 
-    @PostConstruct
-    public void init() {
+    /**
+     * 加载排行榜的线段树
+     * 其他实例正在按等深策略初始化同一排行榜时，等待其发布新版本后按元数据加载
+     */
+    private TreeEntry loadSegmentTree(Long rankingListId) {
+        long deadline = System.currentTimeMillis() + rankingConfig.getSegment().getRebalanceLockMs();
+        while (true) {
+            TreeEntry entry = tryLoadSegmentTree(rankingListId);
+            if (entry != null) {
+                return entry;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("等待其他实例初始化线段树超时 - rankingListId: " + rankingListId);
+            }
+            try {
+                Thread.sleep(LOAD_RETRY_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待其他实例初始化线段树时被中断", e);
+            }
+        }
+    }
+
+    /**
+     * 加载排行榜的线段树
+     * 元数据中存在已生效的版本时按其叶子区间边界加载；否则Redis中已存在线段树数据时直接加载，
+     * 都不存在时根据排行榜中已有的分数初始化。
+     * 已有数据的子区间数量与当前配置不一致时，根据排行榜中已有的分数重新初始化
+     * @return 其他实例正在初始化时返回null
+     */
+    private TreeEntry tryLoadSegmentTree(Long rankingListId) {
         try {
+            Map<Object, Object> meta = redisTemplate.opsForHash().entries(SEGMENT_META_KEY_PREFIX + rankingListId);
+            if (meta.containsKey(META_VERSION)) {
+                long version = Long.parseLong(meta.get(META_VERSION).toString());
+                long[] leafLowers = parseBounds(meta.get(META_BOUNDS).toString());
+                SegmentTree segmentTree = newSegmentTree(getSegmentKey(rankingListId, version));
+                if (hasMatchingData(segmentTree)) {
+                    log.info("使用已存在的排行榜线段树数据 - rankingListId: {}, version: {}", rankingListId, version);
+                    segmentTree.loadTree(leafLowers, (long) MAX_SCORE);
+                } else {
+                    segmentTree.buildTree(leafLowers, (long) MAX_SCORE);
+                    segmentTree.initializeCounts(getLikes(rankingListId));
+                }
+                return new TreeEntry(segmentTree, version);
+            }
+
+            SegmentTree segmentTree = newSegmentTree(getSegmentKey(rankingListId, 0));
             // 检查Redis中是否已存在线段树数据
-            Boolean exists = redisTemplate.hasKey(SEGMENT_KEY_PREFIX+1);
-            if (Boolean.FALSE.equals(exists)) {
-                log.info("初始化排行榜线段树...");
-                //buildSegmentTree((long) MIN_SCORE,(long) MAX_SCORE);
-                segmentTree.buildTree(MIN_SCORE, MAX_SCORE);
-                log.info("排行榜线段树初始化完成");
-                // 从Redis中获取所有排行榜数据
-                Set<String> rankingKeys = redisTemplate.keys(RANKING_KEY_PREFIX + "1");
-                if (rankingKeys != null && !rankingKeys.isEmpty()) {
-                    log.info("开始同步排行榜数据到线段树...");
-
-                    for (String rankingKey : rankingKeys) {
-                        // 获取排行榜ID
-                        String rankingId = rankingKey.substring(RANKING_KEY_PREFIX.length());
-
-                        // 获取该排行榜的所有用户分数
-                        Set<ZSetOperations.TypedTuple<String>> scores = redisTemplate.opsForZSet()
-                                .rangeWithScores(rankingKey, 0, -1);
-
-                        if (scores != null && !scores.isEmpty()) {
-                            log.info("同步排行榜 {} 的数据，共 {} 条记录", rankingId, scores.size());
-
-                            // 遍历所有用户分数，更新线段树
-                            for (ZSetOperations.TypedTuple<String> tuple : scores) {
-                                if (tuple.getValue() != null && tuple.getScore() != null) {
-                                    double score = tuple.getScore();
-                                    // 更新线段树中的计数
-                                    updateSegmentTreeCount(score);
-                                }
-                            }
+            if (hasMatchingData(segmentTree)) {
+                log.info("使用已存在的排行榜线段树数据 - rankingListId: {}", rankingListId);
+                segmentTree.loadTree(MIN_SCORE, MAX_SCORE, rankingConfig.getSegment().getLeafCount());
+                return new TreeEntry(segmentTree, 0);
+            }
+
+            if (rankingConfig.getSegment().isEquiDepth()) {
+                return rebuildEquiDepth(rankingListId, 0);
+            }
+
+            log.info("初始化排行榜线段树 - rankingListId: {}", rankingListId);
+            segmentTree.buildTree(MIN_SCORE, MAX_SCORE, rankingConfig.getSegment().getLeafCount());
+            segmentTree.initializeCounts(getLikes(rankingListId));
+            log.info("排行榜线段树初始化完成 - rankingListId: {}", rankingListId);
+            return new TreeEntry(segmentTree, 0);
+        } catch (Exception e) {
+            log.error("初始化排行榜线段树失败 - rankingListId: {}", rankingListId, e);
+            throw new RuntimeException("初始化排行榜线段树失败", e);
+        }
+    }
+
+    private SegmentTree newSegmentTree(String segmentKey) {
+        RankingConfig.Segment segment = rankingConfig.getSegment();
+        SegmentTree segmentTree = new SegmentTree(segmentKey, redisTemplate, segment.isInMemory(), segment.getSketchBuckets());
+        segmentTree.setWriteBehind(segment.isWriteBehind(), segment.getFlushThreshold(), segment.getMaxStalenessMs());
+        return segmentTree;
+    }
+
+    /**
+     * 判断Redis中是否已存在可直接加载的线段树数据
+     * 子区间数量与当前配置不一致的数据会被删除，由调用方重新初始化
+     */
+    private boolean hasMatchingData(SegmentTree segmentTree) {
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(segmentTree.getRedisKey()))) {
+            return false;
+        }
+        if (segmentTree.matchesStoredLayout()) {
+            return true;
+        }
+        log.info("线段树子区间数量已变更，重新初始化 - key: {}", segmentTree.getRedisKey());
+        redisTemplate.delete(segmentTree.getRedisKey());
+        return false;
+    }
+
+    /**
+     * 获取排行榜中所有用户的点赞数
+     */
+    private long[] getLikes(Long rankingListId) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet()
+                .rangeWithScores(RANKING_KEY_PREFIX + rankingListId, 0, -1);
+        if (tuples == null || tuples.isEmpty()) {
+            return new long[0];
+        }
+        log.info("同步排行榜 {} 的数据，共 {} 条记录", rankingListId, tuples.size());
+        long[] likes = new long[tuples.size()];
+        int size = 0;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            if (tuple.getValue() != null && tuple.getScore() != null) {
+                likes[size++] = ScoreCodec.likes(tuple.getScore().doubleValue());
+            }
+        }
+        return Arrays.copyOf(likes, size);
+    }
+
+    /**
+     * 按当前的分数分布重新划分叶子区间，在新版本的Hash中重建计数，然后切换到新版本
+     * 多个实例之间通过Redis锁（SET NX PX）互斥；切换时比较元数据中的当前版本，
+     * 锁过期后其他实例已切换的版本不会被覆盖，未能切换的新版本数据立即删除。
+     * 被替换的旧版本登记到待删除集合，宽限期后删除，其他实例在此之前通过版本检查切换到新版本
+     * @param minIntervalMs 距上次划分不足该时长（毫秒）时不重新划分，0表示不限制
+     * @return 未获得锁、刚被其他实例划分过或版本已被其他实例切换时返回null
+     */
+    private TreeEntry rebuildEquiDepth(Long rankingListId, long minIntervalMs) {
+        String lockKey = SEGMENT_LOCK_KEY_PREFIX + rankingListId;
+        String token = UUID.randomUUID().toString();
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(lockKey, token,
+                Duration.ofMillis(rankingConfig.getSegment().getRebalanceLockMs()));
+        if (!Boolean.TRUE.equals(locked)) {
+            log.debug("其他实例正在重新划分线段树叶子区间 - rankingListId: {}", rankingListId);
+            return null;
+        }
+        try {
+            String metaKey = SEGMENT_META_KEY_PREFIX + rankingListId;
+            List<Object> meta = redisTemplate.opsForHash().multiGet(metaKey, Arrays.asList(META_VERSION, META_REBALANCED_AT));
+            Object previousVersion = meta.get(0);
+            Object rebalancedAt = meta.get(1);
+            long now = System.currentTimeMillis();
+            if (minIntervalMs > 0 && rebalancedAt != null && now - Long.parseLong(rebalancedAt.toString()) < minIntervalMs) {
+                return null;
+            }
+
+            long[] likes = getLikes(rankingListId);
+            long[] leafLowers = SegmentTree.computeEquiDepthLeafLowers(likes, rankingConfig.getSegment().getLeafCount(), (long) MAX_SCORE);
+
+            // 在新版本的Hash中重建计数
+            long version = redisTemplate.opsForHash().increment(metaKey, META_LATEST_VERSION, 1);
+            SegmentTree segmentTree = newSegmentTree(getSegmentKey(rankingListId, version));
+            segmentTree.buildTree(leafLowers, (long) MAX_SCORE);
+            segmentTree.initializeCounts(likes);
+
+            // 当前版本未被其他实例修改时切换到新版本
+            long oldVersion = previousVersion != null ? Long.parseLong(previousVersion.toString()) : 0;
+            Long switched = redisTemplate.execute(SWITCH_VERSION_SCRIPT, Arrays.asList(metaKey, SEGMENT_RETIRED_KEY),
+                    previousVersion != null ? previousVersion.toString() : "", String.valueOf(version),
+                    formatBounds(leafLowers), rankingListId + ":" + oldVersion, String.valueOf(now));
+            if (switched == null || switched == 0) {
+                log.warn("线段树版本已被其他实例切换，放弃本次划分 - rankingListId: {}, version: {}", rankingListId, version);
+                redisTemplate.delete(segmentTree.getRedisKey());
+                return null;
+            }
+
+            log.info("排行榜线段树叶子区间重新划分完成 - rankingListId: {}, version: {}", rankingListId, version);
+            return new TreeEntry(segmentTree, version);
+        } finally {
+            redisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), token);
+        }
+    }
+
+    /**
+     * 按等深策略重新划分已加载的排行榜线段树的叶子区间
+     * 其他实例已切换版本的线段树直接丢弃，下次使用时重新加载；
+     * 其他实例在半个间隔内已重新划分过的排行榜不再重复划分
+     */
+    @Scheduled(fixedDelayString = "${ranking.segment.rebalance-interval-ms:600000}")
+    public void rebalanceSegmentTrees() {
+        if (!rankingConfig.getSegment().isEquiDepth()) {
+            return;
+        }
+        for (Map.Entry<Long, TreeEntry> entry : segmentTrees.entrySet()) {
+            Long rankingListId = entry.getKey();
+            try {
+                Object version = redisTemplate.opsForHash().get(SEGMENT_META_KEY_PREFIX + rankingListId, META_VERSION);
+                if (version != null && Long.parseLong(version.toString()) != entry.getValue().version) {
+                    removeTree(rankingListId, entry.getValue());
+                    continue;
+                }
+                rebalance(rankingListId);
+            } catch (Exception e) {
+                log.error("重新划分线段树叶子区间失败 - rankingListId: {}", rankingListId, e);
+            }
+        }
+    }
+
+    /**
+     * 重新划分排行榜线段树的叶子区间并切换到新版本
+     * 重建期间仍由旧版本提供服务，期间的少量分数变化不会计入新版本；
+     * 被替换的旧版本回写缓冲的计数变化，供尚未切换版本的其他实例使用
+     */
+    public void rebalance(Long rankingListId) {
+        TreeEntry entry = rebuildEquiDepth(rankingListId, rankingConfig.getSegment().getRebalanceIntervalMs() / 2);
+        if (entry == null) {
+            return;
+        }
+        entry.lastAccessTime = System.nanoTime();
+        ReentrantLock lock = getLoadLock(rankingListId);
+        lock.lock();
+        try {
+            TreeEntry previous = segmentTrees.put(rankingListId, entry);
+            if (previous != null) {
+                previous.tree.retire();
+            }
+        } catch (Exception e) {
+            log.error("回写被替换的线段树计数失败 - rankingListId: {}", rankingListId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 检查已加载的线段树是否已被其他实例切换到新版本，并删除宽限期已过的旧版本数据
+     * 所有排行榜的元数据版本通过一次管道读取，版本变化的线段树回写后丢弃，下次使用时按新版本加载；
+     * 内存模式下版本未变化的线段树从Redis重新读取区间计数，合并其他实例的变化
+     */
+    @Scheduled(fixedDelayString = "${ranking.segment.version-check-interval-ms:1000}")
+    public void checkSegmentVersions() {
+        try {
+            List<Long> rankingListIds = new ArrayList<>(segmentTrees.keySet());
+            if (!rankingListIds.isEmpty()) {
+                byte[] versionField = META_VERSION.getBytes(StandardCharsets.UTF_8);
+                List<Object> versions = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    for (Long rankingListId : rankingListIds) {
+                        connection.hashCommands().hGet(
+                                (SEGMENT_META_KEY_PREFIX + rankingListId).getBytes(StandardCharsets.UTF_8), versionField);
+                    }
+                    return null;
+                });
+                for (int i = 0; i < rankingListIds.size(); i++) {
+                    Long rankingListId = rankingListIds.get(i);
+                    TreeEntry entry = segmentTrees.get(rankingListId);
+                    long version = versions.get(i) != null ? Long.parseLong(versions.get(i).toString()) : 0;
+                    if (entry == null) {
+                        continue;
+                    }
+                    if (entry.version != version) {
+                        if (removeTree(rankingListId, entry)) {
+                            log.info("线段树已切换到新版本，重新加载 - rankingListId: {}, version: {}", rankingListId, version);
                         }
+                        continue;
+                    }
+                    try {
+                        entry.tree.refreshCounts();
+                    } catch (Exception e) {
+                        log.error("重新读取线段树计数失败 - rankingListId: {}", rankingListId, e);
                     }
-                    log.info("排行榜数据同步完成");
                 }
-                log.info("排行榜线段树初始化完成");
-            } else {
-                log.info("使用已存在的排行榜线段树数据");
             }
+            deleteRetiredVersions();
         } catch (Exception e) {
-            log.error("初始化排行榜线段树失败", e);
-            throw new RuntimeException("初始化排行榜线段树失败", e);
+            log.error("检查线段树版本失败", e);
         }
     }
 
     /**
-     * 更新线段树中的计数
+     * 删除宽限期已过的旧版本线段树数据，仍是当前版本的数据（排行榜重置后重新使用了该版本）只移出待删除集合
      */
-    private void updateSegmentTreeCount(double score) {
-        try {
-            // 获取该分数所在的区间
-            List<SegmentTreeNode> segments = segmentTree.getSegmentsForScore(score);
+    private void deleteRetiredVersions() {
+        long expiredBefore = System.currentTimeMillis() - rankingConfig.getSegment().getRetiredGraceMs();
+        Set<String> retired = redisTemplate.opsForZSet().rangeByScore(SEGMENT_RETIRED_KEY, 0, expiredBefore);
+        if (retired == null || retired.isEmpty()) {
+            return;
+        }
+        for (String member : retired) {
+            int separator = member.lastIndexOf(':');
+            Long rankingListId = Long.valueOf(member.substring(0, separator));
+            long version = Long.parseLong(member.substring(separator + 1));
+            Object current = redisTemplate.opsForHash().get(SEGMENT_META_KEY_PREFIX + rankingListId, META_VERSION);
+            if (version != (current != null ? Long.parseLong(current.toString()) : 0)) {
+                redisTemplate.delete(getSegmentKey(rankingListId, version));
+                log.info("删除旧版本线段树数据 - rankingListId: {}, version: {}", rankingListId, version);
+            }
+            redisTemplate.opsForZSet().remove(SEGMENT_RETIRED_KEY, member);
+        }
+    }
+
+    private String getSegmentKey(Long rankingListId, long version) {
+        return version == 0 ? SEGMENT_KEY_PREFIX + rankingListId : SEGMENT_KEY_PREFIX + rankingListId + ":v" + version;
+    }
+
+    private static String formatBounds(long[] leafLowers) {
+        StringBuilder sb = new StringBuilder();
+        for (long lower : leafLowers) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(lower);
+        }
+        return sb.toString();
+    }
+
+    private static long[] parseBounds(String bounds) {
+        return Arrays.stream(bounds.split(",")).mapToLong(Long::parseLong).toArray();
+    }
 
-            // 更新每个区间的计数
-            for (SegmentTreeNode segment : segments) {
-                String segmentKey = segment.getSegmentKey();
-                redisTemplate.opsForHash().increment(SEGMENT_KEY_PREFIX + 1, segmentKey, 1);
+    /**
+     * 线段树数量超过上限时，淘汰最久未使用的线段树
+     * 被淘汰的线段树在移除前回写未持久化的计数，回写失败时暂不淘汰，下次加载线段树时重试
+     */
+    private void evictIfNecessary() {
+        int maxTrees = rankingConfig.getSegment().getMaxTrees();
+        while (segmentTrees.size() > maxTrees) {
+            Map.Entry<Long, TreeEntry> eldest = null;
+            for (Map.Entry<Long, TreeEntry> entry : segmentTrees.entrySet()) {
+                if (eldest == null || entry.getValue().lastAccessTime < eldest.getValue().lastAccessTime) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                continue;
+            }
+            if (!removeTree(eldest.getKey(), eldest.getValue())) {
+                return;
             }
+            log.info("淘汰排行榜线段树 - rankingListId: {}", eldest.getKey());
+        }
+    }
+
+    /**
+     * 在加载锁内回写线段树缓冲的计数变化，然后将其移出注册表
+     * 移出后仍持有该线段树的线程写入的变化在更新时立即回写；回写失败时保留该线段树，由下次检查重试
+     * @return 线段树已被移出时返回true
+     */
+    private boolean removeTree(Long rankingListId, TreeEntry entry) {
+        ReentrantLock lock = getLoadLock(rankingListId);
+        lock.lock();
+        try {
+            if (segmentTrees.get(rankingListId) != entry) {
+                return false;
+            }
+            entry.tree.retire();
+            segmentTrees.remove(rankingListId, entry);
+            return true;
         } catch (Exception e) {
-            log.error("更新线段树计数失败 - score: {}", score, e);
+            log.error("回写线段树计数失败，暂不移除 - rankingListId: {}", rankingListId, e);
+            return false;
+        } finally {
+            lock.unlock();
         }
     }
 
+    private ReentrantLock getLoadLock(Long rankingListId) {
+        return loadLocks[Math.floorMod(rankingListId.hashCode(), loadLocks.length)];
+    }
+
+    /**
+     * 定时将缓冲的区间计数变化回写到Redis
+     */
+    @Scheduled(fixedDelayString = "${ranking.segment.flush-interval-ms:10}")
+    public void flushSegmentCounts() {
+        segmentTrees.forEach((rankingListId, entry) -> {
+            try {
+                entry.tree.flush();
+            } catch (Exception e) {
+                log.error("回写线段树计数失败 - rankingListId: {}", rankingListId, e);
+            }
+        });
+    }
+
+    /**
+     * 应用关闭前回写所有未持久化的区间计数
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushSegmentCounts();
+    }
+
     /**
      * 更新用户分数
+     * @param oldScore 旧分数（有序集合中的分数），用户首次上榜时为null
+     * @param newScore 新分数（有序集合中的分数）
      */
-    public void updateUserScore(long userId, double oldScore, double newScore) {
+    public void updateUserScore(Long rankingListId, long userId, Double oldScore, Double newScore) {
         try {
             // 更新线段树中的计数
-            segmentTree.updateScore(oldScore, newScore);
+            getSegmentTree(rankingListId).updateScore(ScoreCodec.likes(oldScore), ScoreCodec.likes(newScore));
 
 
-            log.debug("更新用户分数成功 - userId: {}, oldScore: {}, newScore: {}",
-                    userId, oldScore, newScore);
+            log.debug("更新用户分数成功 - rankingListId: {}, userId: {}, oldScore: {}, newScore: {}",
+                    rankingListId, userId, oldScore, newScore);
         } catch (Exception e) {
-            log.error("更新用户分数失败 - userId: {}, oldScore: {}, newScore: {}",
-                    userId, oldScore, newScore, e);
+            log.error("更新用户分数失败 - rankingListId: {}, userId: {}, oldScore: {}, newScore: {}",
+                    rankingListId, userId, oldScore, newScore, e);
             throw new RuntimeException("更新用户分数失败", e);
         }
     }
@@ -113,29 +509,48 @@ public class SegmentTreeServiceImpl {
     /**
      * 获取用户排名
      */
-    public long getUserRank(double score) {
+    public long getUserRank(Long rankingListId, double score) {
+        return getUserFuzzyRank(rankingListId, score).getRank();
+    }
+
+    /**
+     * 获取用户的粗略排名及其误差上界
+     * @param score 有序集合中的分数
+     */
+    public FuzzyRank getUserFuzzyRank(Long rankingListId, double score) {
         try {
-            long rank = segmentTree.getRank(score);
-            log.debug("获取用户排名成功 - score: {}, rank: {}", score, rank);
+            FuzzyRank rank = getSegmentTree(rankingListId).estimateRank(ScoreCodec.likes(score));
+            log.debug("获取用户排名成功 - rankingListId: {}, score: {}, rank: {}, errorBound: {}",
+                    rankingListId, score, rank.getRank(), rank.getErrorBound());
             return rank;
         } catch (Exception e) {
-            log.error("获取用户排名失败 - score: {}", score, e);
+            log.error("获取用户排名失败 - rankingListId: {}, score: {}", rankingListId, score, e);
             throw new RuntimeException("获取用户排名失败", e);
         }
     }
 
     /**
      * 重置排行榜
+     * 删除Redis中的线段树数据，并根据排行榜中的分数重新初始化
      */
-    public void resetRanking() {
+    public void resetRanking(Long rankingListId) {
         try {
+            TreeEntry entry = segmentTrees.remove(rankingListId);
             // 删除Redis中的线段树数据
-            redisTemplate.delete(SEGMENT_KEY_PREFIX + 1);
+            List<String> keys = new ArrayList<>();
+            keys.add(SEGMENT_KEY_PREFIX + rankingListId);
+            if (entry != null) {
+                keys.add(entry.tree.getRedisKey());
+            }
+            redisTemplate.delete(keys);
+            // 保留元数据中的最新版本号，重新初始化后的版本不会与等待删除的旧版本重复
+            redisTemplate.opsForHash().delete(SEGMENT_META_KEY_PREFIX + rankingListId,
+                    META_VERSION, META_BOUNDS, META_REBALANCED_AT);
             // 重新初始化线段树
-            segmentTree.buildTree(MIN_SCORE, MAX_SCORE);
-            log.info("排行榜重置完成");
+            getSegmentTree(rankingListId);
+            log.info("排行榜重置完成 - rankingListId: {}", rankingListId);
         } catch (Exception e) {
-            log.error("重置排行榜失败", e);
+            log.error("重置排行榜失败 - rankingListId: {}", rankingListId, e);
             throw new RuntimeException("重置排行榜失败", e);
         }
     }
@@ -143,17 +558,34 @@ public class SegmentTreeServiceImpl {
     /**
      * 获取排行榜统计信息
      */
-    public Map<String, Object> getRankingStats() {
+    public Map<String, Object> getRankingStats(Long rankingListId) {
         try {
-            Map<Object, Object> entries = redisTemplate.opsForHash().entries(SEGMENT_KEY_PREFIX+1);
+            SegmentTree segmentTree = getSegmentTree(rankingListId);
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(segmentTree.getRedisKey());
             Map<String, Object> stats = new HashMap<>();
             stats.put("totalSegments", entries.size());
             stats.put("minScore", MIN_SCORE);
             stats.put("maxScore", MAX_SCORE);
+            stats.put("loadedTrees", segmentTrees.size());
+            stats.put("leafLowers", segmentTree.getLeafLowers());
             return stats;
         } catch (Exception e) {
             log.error("获取排行榜统计信息失败", e);
             throw new RuntimeException("获取排行榜统计信息失败", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 已加载的线段树及其版本和最近访问时间
+     */
+    private static class TreeEntry {
+        private final SegmentTree tree;
+        private final long version;
+        private volatile long lastAccessTime = System.nanoTime();
+
+        TreeEntry(SegmentTree tree, long version) {
+            this.tree = tree;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.superrankinglist.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.common.RankingETag;
+import com.example.superrankinglist.common.Result;
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.pojo.RankingItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.RANKING_VERSION_KEY_PREFIX;
+
+/**
+ * 排行榜前K名快照
+ * 每个被查询过的排行榜在本地保存一份不可变的前K名快照（用户ID和点赞数的基本类型数组），
+ * 分页查询落在快照范围内时直接由快照组装，不访问Redis。
+ * 快照由定时任务在后台重建，每次检查时通过一次MGET读取所有排行榜的版本号，版本号变化时重建，
+ * 重建完成后整体替换引用，读取方不加锁、不等待重建；
+ * 首次查询的排行榜只登记，由下次定时任务构建快照，期间查询仍访问Redis。
+ * 快照内的热门分页还会缓存序列化后的响应体（JSON和gzip字节），随快照一起替换
+ */
+@Log4j2
+@Component
+public class TopKSnapshotCache {
+
+    private final RedisTemplate<String, String> stringRedisTemplate;
+    private final RankingConfig.Snapshot config;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 排行榜ID -> 快照及其状态
+     */
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    public TopKSnapshotCache(RedisTemplate<String, String> stringRedisTemplate, RankingConfig rankingConfig,
+                             ObjectMapper objectMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.config = rankingConfig.getSnapshot();
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 从快照中获取 [start, end] 名（从0开始）的数据
+     * @return 快照不存在或不能覆盖该范围时返回null，由调用方查询Redis
+     */
+    public Page<RankingItem> getPage(Long rankingListId, long start, long end, int pageNum, int pageSize) {
+        Snapshot snapshot = lookup(rankingListId, end);
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.toPage(rankingListId, start, end, pageNum, pageSize);
+    }
+
+    /**
+     * 从快照中获取 [start, end] 名（从0开始）序列化后的响应体
+     * 同一快照内相同的分页只序列化和压缩一次，快照重建后随旧快照一起丢弃，因此缓存键隐含了快照版本
+     * @return 快照不存在、不能覆盖该范围或序列化失败时返回null，由调用方按普通方式查询
+     */
+    public CachedPage getCachedPage(Long rankingListId, long start, long end, int pageNum, int pageSize) {
+        Snapshot snapshot = lookup(rankingListId, end);
+        if (snapshot == null) {
+            return null;
+        }
+        long pageKey = ((long) pageNum << 32) | (pageSize & 0xFFFFFFFFL);
+        CachedPage cached = snapshot.pages.get(pageKey);
+        if (cached != null) {
+            return cached;
+        }
+        // 序列化在锁外进行，并发的首次请求可能重复序列化，只保留先放入的结果
+        try {
+            cached = serialize(rankingListId, snapshot, start, end, pageNum, pageSize);
+        } catch (IOException e) {
+            log.error("序列化排行榜 {} 的分页失败", rankingListId, e);
+            return null;
+        }
+        if (snapshot.pages.size() < config.getMaxCachedPages()) {
+            CachedPage existing = snapshot.pages.putIfAbsent(pageKey, cached);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * 本地快照对应的排行榜版本号，最多落后一个检查间隔，用于不访问Redis地处理条件请求
+     * @return 排行榜没有快照，或本实例在快照之后有写入时返回null，由调用方从Redis读取版本号
+     */
+    public Long getVersion(Long rankingListId) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(rankingListId);
+        Snapshot snapshot = entry != null ? current(entry) : null;
+        return snapshot != null ? snapshot.version : null;
+    }
+
+    /**
+     * 登记查询并返回能覆盖到第end名的快照
+     */
+    private Snapshot lookup(Long rankingListId, long end) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.computeIfAbsent(rankingListId, id -> new Entry());
+        entry.lastAccessTime = System.currentTimeMillis();
+        Snapshot snapshot = current(entry);
+        if (snapshot == null || !snapshot.covers(end)) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 可以直接使用的快照
+     * 本实例在快照之后有写入时，快照的数据和版本号会让客户端拿到自己写入前的结果，重建前由调用方访问Redis
+     */
+    private static Snapshot current(Entry entry) {
+        Snapshot snapshot = entry.snapshot;
+        if (snapshot == null || snapshot.changes != entry.changes.get()) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * 将分页序列化为与控制器返回值相同的JSON，并生成gzip压缩后的版本
+     */
+    private CachedPage serialize(Long rankingListId, Snapshot snapshot, long start, long end,
+                                 int pageNum, int pageSize) throws IOException {
+        Page<RankingItem> page = snapshot.toPage(rankingListId, start, end, pageNum, pageSize);
+        byte[] json = objectMapper.writeValueAsBytes(Result.success(page));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(json);
+        }
+        return new CachedPage(json, buffer.toByteArray(),
+                RankingETag.page(rankingListId, snapshot.version, pageNum, pageSize));
+    }
+
+    /**
+     * 本实例修改了排行榜中的积分，下次定时任务时重建快照
+     */
+    public void markChanged(Long rankingListId) {
+        Entry entry = entries.get(rankingListId);
+        if (entry != null) {
+            entry.changes.incrementAndGet();
+        }
+    }
+
+    /**
+     * 重建需要更新的快照：尚未构建、排行榜版本号变化、本实例有写入或超过最大存活时间。
+     * 长时间未被查询的排行榜不再维护快照
+     */
+    @Scheduled(fixedDelayString = "${ranking.snapshot.refresh-interval-ms:200}")
+    public void refresh() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Long> rankingListIds = new ArrayList<>(entries.size());
+        for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+            if (now - e.getValue().lastAccessTime > config.getIdleTimeoutMs()) {
+                entries.remove(e.getKey(), e.getValue());
+            } else {
+                rankingListIds.add(e.getKey());
+            }
+        }
+        if (rankingListIds.isEmpty()) {
+            return;
+        }
+
+        List<String> versionKeys = new ArrayList<>(rankingListIds.size());
+        for (Long rankingListId : rankingListIds) {
+            versionKeys.add(RANKING_VERSION_KEY_PREFIX + rankingListId);
+        }
+        List<String> versions;
+        try {
+            versions = stringRedisTemplate.opsForValue().multiGet(versionKeys);
+        } catch (Exception ex) {
+            log.error("读取排行榜版本号失败", ex);
+            return;
+        }
+
+        for (int i = 0; i < rankingListIds.size(); i++) {
+            Long rankingListId = rankingListIds.get(i);
+            Entry entry = entries.get(rankingListId);
+            if (entry == null) {
+                continue;
+            }
+            Snapshot snapshot = entry.snapshot;
+            long changes = entry.changes.get();
+            long version = parseVersion(versions != null ? versions.get(i) : null);
+            if (snapshot != null && snapshot.version == version && snapshot.changes == changes
+                    && now - snapshot.createdAt < config.getMaxAgeMs()) {
+                continue;
+            }
+            try {
+                entry.snapshot = load(rankingListId, changes, now);
+            } catch (Exception ex) {
+                log.error("重建排行榜 {} 的前K名快照失败", rankingListId, ex);
+            }
+        }
+    }
+
+    /**
+     * 排行榜版本号，排行榜从未被修改时为0
+     */
+    static long parseVersion(String version) {
+        return version != null ? Long.parseLong(version) : 0;
+    }
+
+    /**
+     * 通过一次管道读取版本号、前K名和排行榜总人数
+     * 版本号在数据之前读取，快照的数据不会比版本号旧，读取期间的写入会在下次定时任务时再次重建
+     * @param changes 读取前本实例的写入次数
+     */
+    private Snapshot load(Long rankingListId, long changes, long now) {
+        byte[] rawKey = (RANKING_KEY_PREFIX + rankingListId).getBytes(StandardCharsets.UTF_8);
+        byte[] versionKey = (RANKING_VERSION_KEY_PREFIX + rankingListId).getBytes(StandardCharsets.UTF_8);
+        int topK = config.getTopK();
+        List<Object> replies = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().get(versionKey);
+            connection.zSetCommands().zRevRangeWithScores(rawKey, 0, topK - 1);
+            connection.zSetCommands().zCard(rawKey);
+            return null;
+        });
+        long version = parseVersion((String) replies.get(0));
+        @SuppressWarnings("unchecked")
+        Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) replies.get(1);
+        Long total = (Long) replies.get(2);
+
+        int size = tuples != null ? tuples.size() : 0;
+        long[] userIds = new long[size];
+        long[] scores = new long[size];
+        int i = 0;
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                userIds[i] = Long.parseLong(tuple.getValue());
+                scores[i] = ScoreCodec.likes(tuple.getScore());
+                i++;
+            }
+        }
+        return new Snapshot(userIds, scores, total != null ? total : 0, topK, changes, now, version);
+    }
+
+    /**
+     * 已登记的排行榜，快照引用在重建后整体替换
+     */
+    private static class Entry {
+        private volatile Snapshot snapshot;
+        private volatile long lastAccessTime = System.currentTimeMillis();
+        private final AtomicLong changes = new AtomicLong();
+    }
+
+    /**
+     * 不可变的前K名快照，下标i对应排名i + 1
+     */
+    static final class Snapshot {
+        private final long[] userIds;
+        private final long[] scores;
+        private final long total;
+        private final int topK;
+        private final long changes;
+        private final long createdAt;
+        private final long version;
+
+        /**
+         * 分页键（页码 << 32 | 每页数量）-> 序列化后的响应体
+         */
+        private final Map<Long, CachedPage> pages = new ConcurrentHashMap<>();
+
+        Snapshot(long[] userIds, long[] scores, long total, int topK, long changes, long createdAt, long version) {
+            this.userIds = userIds;
+            this.scores = scores;
+            this.total = total;
+            this.topK = topK;
+            this.changes = changes;
+            this.createdAt = createdAt;
+            this.version = version;
+        }
+
+        /**
+         * 快照是否包含到第end名（从0开始）为止的所有数据：end在快照范围内，或排行榜人数少于K、快照已是完整的排行榜
+         */
+        boolean covers(long end) {
+            return end < userIds.length || userIds.length < topK;
+        }
+
+        Page<RankingItem> toPage(Long rankingListId, long start, long end, int pageNum, int pageSize) {
+            Page<RankingItem> page = new Page<>(pageNum, pageSize);
+            int from = (int) Math.min(start, userIds.length);
+            int to = (int) Math.min(end + 1, userIds.length);
+            if (from >= to) {
+                return page;
+            }
+            List<RankingItem> items = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                RankingItem item = new RankingItem();
+                item.setUserId(userIds[i]);
+                item.setScore((double) scores[i]);
+                item.setRankingListId(rankingListId);
+                // 排名从1开始，所以需要+1
+                item.setRanking(i + 1L);
+                item.setRankErrorBound(0L);
+                items.add(item);
+            }
+            page.setRecords(items);
+            page.setTotal(Math.min(total, RankingListServiceImpl.MAX_DISPLAY_RANK));
+            return page;
+        }
+    }
+}
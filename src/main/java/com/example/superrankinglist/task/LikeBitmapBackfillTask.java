@@ -0,0 +1,106 @@
+package com.example.superrankinglist.task;
+
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.mapper.LikeMapper;
+import com.example.superrankinglist.pojo.LikeRecord;
+import lombok.extern.log4j.Log4j2;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.superrankinglist.common.RedisKey.USER_LIKE_KEY_PREFIX;
+
+/**
+ * 点赞用户位图回填任务
+ * 启用点赞去重时，在启动后流式读取like_record表，将已有的点赞记录写入Redis位图
+ */
+@Log4j2
+@Component
+public class LikeBitmapBackfillTask {
+
+    /**
+     * 每次管道写入的点赞记录数量
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    @Autowired
+    private RedisTemplate<String, String> stringRedisTemplate;
+
+    @Autowired
+    private LikeMapper likeMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RankingConfig rankingConfig;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        RankingConfig.Like like = rankingConfig.getLike();
+        if (like.isDedup() && like.isDedupBackfill()) {
+            backfill();
+        }
+    }
+
+    /**
+     * 回填点赞用户位图
+     * 只设置位、不清除位，可以与线上点赞并发执行，重复执行也不影响结果
+     * @return 回填的点赞记录数量
+     */
+    public long backfill() {
+        log.info("开始回填点赞用户位图");
+        try {
+            // 游标需要在事务中读取，事务结束时关闭
+            Long total = transactionTemplate.execute(status -> {
+                long count = 0;
+                List<LikeRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+                try (Cursor<LikeRecord> cursor = likeMapper.streamLikeRecords()) {
+                    for (LikeRecord record : cursor) {
+                        chunk.add(record);
+                        if (chunk.size() == CHUNK_SIZE) {
+                            count += writeChunk(chunk);
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException("读取点赞记录失败", e);
+                }
+                count += writeChunk(chunk);
+                return count;
+            });
+            log.info("点赞用户位图回填完成，共 {} 条点赞记录", total);
+            return total == null ? 0 : total;
+        } catch (Exception e) {
+            log.error("点赞用户位图回填失败", e);
+            throw new RuntimeException("点赞用户位图回填失败", e);
+        }
+    }
+
+    /**
+     * 通过一次管道写入一批点赞记录，写入后清空该批次
+     */
+    private int writeChunk(List<LikeRecord> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (LikeRecord record : chunk) {
+                byte[] key = (USER_LIKE_KEY_PREFIX + record.getRankingListId()).getBytes(StandardCharsets.UTF_8);
+                connection.stringCommands().setBit(key, record.getUserId(), true);
+            }
+            return null;
+        });
+        int size = chunk.size();
+        chunk.clear();
+        return size;
+    }
+}
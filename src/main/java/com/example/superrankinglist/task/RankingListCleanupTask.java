@@ -10,6 +10,7 @@ import org.springframework.stereotype.Component;
 import java.util.Set;
 
 import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.RANKING_VERSION_KEY_PREFIX;
 
 /**
  * 排行榜清理任务
@@ -62,6 +63,9 @@ public class RankingListCleanupTask {
                         // 删除这些成员
                         Long removedCount = redisTemplate.opsForZSet()
                             .remove(rankingKey, membersToRemove.toArray());
+                        // 排行榜总人数发生变化，更新版本号使客户端缓存的分页失效
+                        redisTemplate.opsForValue().increment(
+                            RANKING_VERSION_KEY_PREFIX + rankingKey.substring(RANKING_KEY_PREFIX.length()));
                             
                         log.info("排行榜 {} 清理完成，共删除 {} 条数据，现保留 {} 条数据", 
                             rankingKey, removedCount, rankingConfig.getKeepTopN());
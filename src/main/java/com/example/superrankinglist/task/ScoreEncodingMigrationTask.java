@@ -0,0 +1,122 @@
+package com.example.superrankinglist.task;
+
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.service.impl.SegmentTreeServiceImpl;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+import static com.example.superrankinglist.common.RedisKey.RANKING_KEY_PREFIX;
+import static com.example.superrankinglist.common.RedisKey.RANKING_VERSION_KEY_PREFIX;
+
+/**
+ * 积分编码迁移任务
+ * 启动后将排行榜中旧格式（点赞数 + 4位时间戳小数）的积分重新编码为 点赞数 * 2^28 + 时间部分，
+ * 迁移过的排行榜按点赞数重建线段树。旧格式的成员都在迁移前达到当前点赞数，时间部分统一取最早的TIME_MASK，
+ * 排在之后点赞数相同的成员之前
+ */
+@Log4j2
+@Component
+public class ScoreEncodingMigrationTask {
+
+    /**
+     * 每次脚本调用迁移的成员数量
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> MIGRATE_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        MIGRATE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/migrate_score_encoding.lua")));
+        MIGRATE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Autowired
+    private RedisTemplate<String, String> stringRedisTemplate;
+
+    @Autowired
+    private SegmentTreeServiceImpl segmentTreeService;
+
+    @Autowired
+    private RankingConfig rankingConfig;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!rankingConfig.getScore().isMigrateOnStartup()) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (Exception e) {
+            // 旧格式的积分仍可以正确解码，迁移失败不影响启动
+            log.warn("启动时积分编码迁移失败，下次启动时重试", e);
+        }
+    }
+
+    /**
+     * 迁移所有排行榜
+     * 每次脚本调用原子地迁移一批成员，可以与线上点赞并发执行：点赞脚本同时兼容两种格式，
+     * 点赞后的积分总是新格式；重复执行不影响结果
+     * @return 迁移的成员数量
+     */
+    public long migrate() {
+        String timePart = String.valueOf(ScoreCodec.TIME_MASK);
+        // 使用SCAN遍历排行榜的key，不像KEYS一样长时间阻塞Redis
+        ScanOptions options = ScanOptions.scanOptions().match(RANKING_KEY_PREFIX + "*").count(CHUNK_SIZE).build();
+        try (Cursor<String> rankingKeys = stringRedisTemplate.scan(options)) {
+            long total = 0;
+            while (rankingKeys.hasNext()) {
+                String rankingKey = rankingKeys.next();
+                Long rankingListId = parseRankingListId(rankingKey);
+                if (rankingListId == null) {
+                    continue;
+                }
+                long migrated = migrate(rankingKey, RANKING_VERSION_KEY_PREFIX + rankingListId, timePart);
+                if (migrated > 0) {
+                    // 线段树按点赞数划分区间，迁移后按新的积分重建区间计数
+                    segmentTreeService.resetRanking(rankingListId);
+                    log.info("排行榜 {} 积分编码迁移完成，共 {} 个成员", rankingKey, migrated);
+                }
+                total += migrated;
+            }
+            if (total > 0) {
+                log.info("积分编码迁移完成，共 {} 个成员", total);
+            }
+            return total;
+        } catch (Exception e) {
+            log.error("积分编码迁移失败", e);
+            throw new RuntimeException("积分编码迁移失败", e);
+        }
+    }
+
+    private long migrate(String rankingKey, String versionKey, String timePart) {
+        long total = 0;
+        while (true) {
+            Long migrated = stringRedisTemplate.execute(MIGRATE_SCRIPT, Arrays.asList(rankingKey, versionKey),
+                    timePart, String.valueOf(CHUNK_SIZE));
+            if (migrated == null || migrated == 0) {
+                return total;
+            }
+            total += migrated;
+        }
+    }
+
+    private static Long parseRankingListId(String rankingKey) {
+        try {
+            return Long.valueOf(rankingKey.substring(RANKING_KEY_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.superrankinglist.utils;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * 响应式用户上下文工具类
+ * 响应式接口中一个请求会在多个线程上执行，用户ID保存在Reactor上下文中而不是ThreadLocal
+ */
+public class ReactiveUserContext {
+    private static final String USER_ID_KEY = ReactiveUserContext.class.getName() + ".userId";
+
+    /**
+     * 获取用户ID
+     * @return 用户ID，未登录时为空
+     */
+    public static Mono<Long> getUserId() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.<Long>getOrEmpty(USER_ID_KEY)));
+    }
+
+    /**
+     * 设置用户ID
+     * @param userId 用户ID
+     * @return 包含用户ID的Reactor上下文
+     */
+    public static Context withUserId(Long userId) {
+        return Context.of(USER_ID_KEY, userId);
+    }
+}
@@ -3,6 +3,7 @@ package com.example.superrankinglist.utils;
 /**
  * 用户上下文工具类
  * 用于在请求线程中存储和获取用户ID
+ * 启用虚拟线程时每个请求同样独占一个线程，由拦截器在请求结束时清除；响应式接口使用ReactiveUserContext
  */
 public class UserContext {
     private static final ThreadLocal<Long> userIdHolder = new ThreadLocal<>();
@@ -0,0 +1,44 @@
+-- 根据线段树区间计数获取用户粗略排名的Lua脚本
+-- KEYS[1]: 线段树的key
+-- ARGV[1]: 用户点赞数
+-- ARGV[2]: 插值区间 [start, end) 的start（点赞数不在任何叶子区间时为空字符串）
+-- ARGV[3]: 插值区间的end
+-- ARGV[4]: 插值区间的field，未启用子区间时为叶子区间，启用后为叶子区间内的子区间
+-- ARGV[5..n]: 所有需要累加的区间的field（路径上的右兄弟区间和高于该点赞数的子区间）
+-- 返回: {粗略排名, 误差上界（插值区间内的用户数量）}
+local score = tonumber(ARGV[1])
+local has_leaf = ARGV[4] ~= ''
+
+local fields = {}
+if has_leaf then
+    table.insert(fields, ARGV[4])
+end
+for i = 5, #ARGV do
+    table.insert(fields, ARGV[i])
+end
+if #fields == 0 then
+    return {0, 0}
+end
+
+-- 一次HMGET读取插值区间和所有需要累加的区间的计数
+local counts = redis.call('HMGET', KEYS[1], unpack(fields))
+
+local rank = 0
+local first = 1
+if has_leaf then
+    first = 2
+end
+for i = first, #counts do
+    rank = rank + (tonumber(counts[i]) or 0)
+end
+
+-- 插值区间内按均匀分布估算排名
+local error_bound = 0
+if has_leaf then
+    local start = tonumber(ARGV[2])
+    local finish = tonumber(ARGV[3])
+    error_bound = tonumber(counts[1]) or 0
+    rank = rank + (finish - score) * error_bound / (finish - start)
+end
+
+return {math.floor(rank), error_bound}
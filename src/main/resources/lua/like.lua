@@ -0,0 +1,154 @@
+-- 点赞：在一次脚本调用中原子地更新用户积分和线段树区间计数
+-- KEYS[1]: 排行榜的key
+-- KEYS[2]: 线段树的key
+-- KEYS[3]: 排行榜版本号的key，积分变化时加1
+-- KEYS[4]: 可选，排行榜的点赞用户位图key，传入时每个用户只能点赞一次
+-- ARGV[1]: 用户ID
+-- ARGV[2]: 积分增量
+-- ARGV[3]: 积分的时间部分，由ScoreCodec根据点赞时间计算，越早点赞越大
+-- ARGV[4]: 是否在脚本中更新线段树区间计数（1：更新；0：由调用方在本地缓冲中更新）
+-- ARGV[5]: 是否返回点赞后的排名（1：返回；0：不返回）
+-- ARGV[6]: 叶子区间数量
+-- ARGV[7]: 每个叶子区间内的子区间数量，0表示不启用
+-- ARGV[8]: 最大分数
+-- ARGV[9..]: 各叶子区间的下界
+-- 积分编码：点赞数 * 2^28 + 时间部分，与ScoreCodec一致；小于2^28的旧格式积分（点赞数 + 4位时间戳小数）按整数部分解码
+-- 点赞后的点赞数超过ScoreCodec.MAX_LIKES时返回错误，不修改任何数据；超过线段树最大分数的点赞数不计入任何区间
+-- 返回: {旧积分（用户首次上榜时为空字符串）, 新积分（重复点赞时为空字符串，积分不变）, 排名（从0开始，不返回排名时为-1）}
+local TIME_SPAN = 268435456   -- 2^28，时间部分的取值范围，与ScoreCodec.TIME_BITS一致
+local MAX_LIKES = 33554431    -- 2^25 - 1，与ScoreCodec.MAX_LIKES一致，超过后积分超出double的精确整数范围
+local BOUNDS = 9              -- 首个叶子区间下界在ARGV中的位置
+
+local ranking_key = KEYS[1]
+local segment_key = KEYS[2]
+local version_key = KEYS[3]
+local user_id = ARGV[1]
+local increment = tonumber(ARGV[2])
+local time_part = tonumber(ARGV[3])
+if not increment or not time_part then
+    return redis.error_reply("Invalid score or timestamp")
+end
+
+-- 从积分中解码点赞数，积分不超过2^53，除法和取整都是精确的
+local function likes_of(score)
+    if score < TIME_SPAN then
+        return math.floor(score)
+    end
+    return math.floor(score / TIME_SPAN)
+end
+
+local current_score = redis.call('ZSCORE', ranking_key, user_id)
+
+local old_likes = nil
+local new_likes = increment
+if current_score then
+    old_likes = likes_of(tonumber(current_score))
+    new_likes = old_likes + increment
+end
+-- 在写入点赞用户位图之前检查，被拒绝的点赞不会被记为已点赞
+if new_likes > MAX_LIKES then
+    return redis.error_reply("Like count exceeds limit " .. MAX_LIKES)
+end
+
+-- 以用户ID为偏移量的位图去重，已点赞过的用户不再更新积分
+if KEYS[4] and redis.call('SETBIT', KEYS[4], user_id, 1) == 1 then
+    local rank = -1
+    if ARGV[5] == '1' and current_score then
+        rank = redis.call('ZREVRANK', ranking_key, user_id)
+    end
+    return {current_score or '', '', rank}
+end
+
+-- 以整数形式传给ZADD和返回，避免默认的数字格式丢失精度
+local new_score = string.format('%.0f', new_likes * TIME_SPAN + time_part)
+redis.call('ZADD', ranking_key, new_score, user_id)
+redis.call('INCR', version_key)
+
+if ARGV[4] == '1' then
+    local leaf_count = tonumber(ARGV[6])
+    local buckets = tonumber(ARGV[7])
+    local max_score = tonumber(ARGV[8])
+
+    -- 点赞数所在叶子区间的序号（从0开始），不在任何叶子区间内时返回nil
+    local function leaf_of(likes)
+        if likes < tonumber(ARGV[BOUNDS]) or likes > max_score then
+            return nil
+        end
+        local lo, hi = 0, leaf_count - 1
+        while lo < hi do
+            local mid = math.floor((lo + hi + 1) / 2)
+            if tonumber(ARGV[BOUNDS + mid]) <= likes then
+                lo = mid
+            else
+                hi = mid - 1
+            end
+        end
+        return lo
+    end
+
+    -- 点赞数在叶子区间内所属子区间的节点编号
+    local function bucket_of(k, likes)
+        local lower = tonumber(ARGV[BOUNDS + k])
+        local next_lower = max_score + 1
+        if k + 1 < leaf_count then
+            next_lower = tonumber(ARGV[BOUNDS + k + 1])
+        end
+        local b = math.floor((likes - lower) * buckets / (next_lower - lower))
+        return 2 * leaf_count + k * buckets + b
+    end
+
+    local function incr(node, delta)
+        local field = tostring(node)
+        local count = redis.call('HINCRBY', segment_key, field, delta)
+        -- 如果计数小于0，设置为0
+        if count < 0 then
+            redis.call('HSET', segment_key, field, 0)
+        end
+    end
+
+    -- 计算新旧点赞数所在的叶子区间和子区间，0表示不在任何区间内
+    local function locate(likes)
+        if not likes then
+            return 0, 0
+        end
+        local k = leaf_of(likes)
+        if not k then
+            return 0, 0
+        end
+        if buckets > 0 then
+            return leaf_count + k, bucket_of(k, likes)
+        end
+        return leaf_count + k, 0
+    end
+
+    local old_leaf, old_bucket = locate(old_likes)
+    local new_leaf, new_bucket = locate(new_likes)
+
+    if old_bucket ~= new_bucket then
+        if old_bucket > 0 then
+            incr(old_bucket, -1)
+        end
+        if new_bucket > 0 then
+            incr(new_bucket, 1)
+        end
+    end
+
+    -- 叶子区间位于同一层，同时向上移动直到公共祖先
+    while old_leaf ~= new_leaf do
+        if old_leaf > 0 then
+            incr(old_leaf, -1)
+        end
+        if new_leaf > 0 then
+            incr(new_leaf, 1)
+        end
+        old_leaf = math.floor(old_leaf / 2)
+        new_leaf = math.floor(new_leaf / 2)
+    end
+end
+
+local rank = -1
+if ARGV[5] == '1' then
+    rank = redis.call('ZREVRANK', ranking_key, user_id)
+end
+
+return {current_score or '', new_score, rank}
@@ -0,0 +1,29 @@
+-- 将排行榜中旧格式的积分（点赞数 + 4位时间戳小数）重新编码为 点赞数 * 2^28 + 时间部分
+-- 旧格式的积分都小于2^28，迁移后不小于2^28，重复执行只会处理尚未迁移的成员
+-- KEYS[1]: 排行榜的key
+-- KEYS[2]: 排行榜版本号的key，有成员被迁移时加1
+-- ARGV[1]: 迁移后的时间部分，旧格式的小数部分不能还原出点赞时间，统一取最早的时间部分（TIME_MASK），
+--          旧成员在迁移前已达到当前点赞数，排在之后点赞数相同的成员之前
+-- ARGV[2]: 本次最多迁移的成员数量
+-- 返回: 本次迁移的成员数量，为0时迁移完成
+local TIME_SPAN = 268435456  -- 2^28，与ScoreCodec.TIME_BITS一致
+
+local ranking_key = KEYS[1]
+local time_part = tonumber(ARGV[1])
+local limit = tonumber(ARGV[2])
+if not time_part or not limit then
+    return redis.error_reply("Invalid time part or limit")
+end
+
+-- 点赞数至少为1，积分小于1的成员不会出现在排行榜中
+local legacy = redis.call('ZRANGEBYSCORE', ranking_key, 1, '(' .. TIME_SPAN, 'WITHSCORES', 'LIMIT', 0, limit)
+for i = 1, #legacy, 2 do
+    local likes = math.floor(tonumber(legacy[i + 1]))
+    redis.call('ZADD', ranking_key, string.format('%.0f', likes * TIME_SPAN + time_part), legacy[i])
+end
+
+if #legacy > 0 then
+    redis.call('INCR', KEYS[2])
+end
+
+return #legacy / 2
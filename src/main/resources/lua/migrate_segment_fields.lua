@@ -0,0 +1,38 @@
+-- 将旧格式（"%.4f-%.4f"区间标识）的线段树Hash迁移为按节点编号存储的field
+-- 在一次脚本调用中完成读取、删除和写入，多个实例同时加载时只有第一个实例执行迁移
+-- KEYS[1]: 线段树的key
+-- ARGV: 旧区间标识和新field成对传入，即 legacyKey1, field1, legacyKey2, field2, ...，首个新field为根节点
+local function migrate_segment_fields()
+    -- 参数检查
+    if #KEYS < 1 or #ARGV < 2 or #ARGV % 2 ~= 0 then
+        return redis.error_reply("Invalid number of parameters")
+    end
+
+    local segment_key = KEYS[1]  -- 线段树的key
+
+    -- 已迁移或不存在时直接返回
+    if redis.call('HEXISTS', segment_key, ARGV[2]) == 1 or redis.call('EXISTS', segment_key) == 0 then
+        return 0
+    end
+
+    -- 按旧区间标识读取计数，缺失的区间计为0
+    local migrated = {}
+    for i = 1, #ARGV, 2 do
+        migrated[#migrated + 1] = ARGV[i + 1]
+        migrated[#migrated + 1] = redis.call('HGET', segment_key, ARGV[i]) or '0'
+    end
+    local sketch_buckets = redis.call('HGET', segment_key, 'sketchBuckets')
+
+    -- 替换原有数据
+    redis.call('DEL', segment_key)
+    for i = 1, #migrated, 2 do
+        redis.call('HSET', segment_key, migrated[i], migrated[i + 1])
+    end
+    if sketch_buckets then
+        redis.call('HSET', segment_key, 'sketchBuckets', sketch_buckets)
+    end
+
+    return 1
+end
+
+return migrate_segment_fields()
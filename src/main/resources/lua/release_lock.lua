@@ -0,0 +1,8 @@
+-- 释放锁：只有锁的值仍是自己的标识时才删除，避免删除锁过期后被其他实例获取的锁
+-- KEYS[1]: 锁的key
+-- ARGV[1]: 获取锁时写入的标识
+-- 返回: 1 已释放；0 锁已不属于自己
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,18 @@
+-- 切换线段树版本：元数据中的当前版本与预期一致时写入新版本，并登记旧版本等待延迟删除
+-- KEYS[1]: 线段树元数据的key
+-- KEYS[2]: 待删除的旧版本有序集合的key
+-- ARGV[1]: 预期的当前版本，元数据中没有版本时为空字符串
+-- ARGV[2]: 新版本
+-- ARGV[3]: 新版本的叶子区间下界
+-- ARGV[4]: 旧版本在有序集合中的成员（排行榜ID:版本）
+-- ARGV[5]: 当前时间（毫秒）
+-- 返回: 1 切换成功；0 当前版本已被其他实例修改，未切换
+local current = redis.call('HGET', KEYS[1], 'version')
+if (current or '') ~= ARGV[1] then
+    return 0
+end
+
+redis.call('HMSET', KEYS[1], 'version', ARGV[2], 'bounds', ARGV[3], 'rebalancedAt', ARGV[5])
+-- 其他实例在检查到版本变化之前仍读取旧版本，旧版本在宽限期后删除
+redis.call('ZADD', KEYS[2], ARGV[5], ARGV[4])
+return 1
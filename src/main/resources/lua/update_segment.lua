@@ -1,30 +1,24 @@
 -- 更新线段树区间计数
+-- KEYS[1]: 线段树的key
+-- ARGV: 区间field和变化量成对传入，即 field1, delta1, field2, delta2, ...
 local function update_segment()
     -- 参数检查
-    if #KEYS < 1 or #ARGV < 1 then
+    if #KEYS < 1 or #ARGV < 2 or #ARGV % 2 ~= 0 then
         return redis.error_reply("Invalid number of parameters")
     end
 
     local segment_key = KEYS[1]  -- 线段树的key
 
     -- 处理所有需要更新的区间
-    for i = 1, #ARGV do
-        local segment_info = ARGV[i]
-        -- 移除可能存在的引号
-        segment_info = string.gsub(segment_info, '"', '')
-        -- 使用更宽松的模式匹配，支持小数点格式
-        local segmentKey, delta = string.match(segment_info, "([%d%.]+%-[%d%.]+):([-]?%d+)")
-        
-        if not segmentKey or not delta then
-            return redis.error_reply("Invalid segment update format: " .. tostring(segment_info))
-        end
-        
+    for i = 1, #ARGV, 2 do
+        local segmentKey = ARGV[i]
+
         -- 确保delta是整数
-        delta = tonumber(delta)
+        local delta = tonumber(ARGV[i + 1])
         if not delta then
-            return redis.error_reply("Invalid delta value: " .. tostring(delta))
+            return redis.error_reply("Invalid delta value: " .. tostring(ARGV[i + 1]))
         end
-        
+
         -- 更新计数
         local newCount = redis.call('HINCRBY', segment_key, segmentKey, delta)
         -- 如果计数小于0，设置为0
@@ -36,4 +30,4 @@ local function update_segment()
     return 1
 end
 
-return update_segment() 
\ No newline at end of file
+return update_segment()
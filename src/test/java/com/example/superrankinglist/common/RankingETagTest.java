@@ -0,0 +1,35 @@
+package com.example.superrankinglist.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 排行榜ETag测试
+ */
+public class RankingETagTest {
+
+    @Test
+    void testMatchesCurrentVersionOnly() {
+        String etag = RankingETag.page(1L, 7, 1, 10);
+
+        assertTrue(RankingETag.matches(etag, etag));
+        // 代理可能去掉弱ETag的前缀，也可能带回多个ETag
+        assertTrue(RankingETag.matches("\"1-7-1-10\"", etag));
+        assertTrue(RankingETag.matches("W/\"1-6-1-10\", " + etag, etag));
+        assertTrue(RankingETag.matches("*", etag));
+        assertFalse(RankingETag.matches(RankingETag.page(1L, 6, 1, 10), etag));
+        assertFalse(RankingETag.matches(RankingETag.userRank(1L, 7, 10L), etag));
+        assertFalse(RankingETag.matches(null, etag));
+    }
+
+    @Test
+    void testNotModifiedKeepsETag() {
+        String etag = RankingETag.userRank(1L, 7, 10L);
+
+        assertEquals(304, RankingETag.notModified(etag).getStatusCode().value());
+        assertEquals(etag, RankingETag.notModified(etag).getHeaders().getETag());
+    }
+}
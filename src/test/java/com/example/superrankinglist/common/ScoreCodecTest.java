@@ -0,0 +1,65 @@
+package com.example.superrankinglist.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 积分编码测试
+ */
+public class ScoreCodecTest {
+
+    private static final long SEASON_START = 1735689600000L;
+
+    private final ScoreCodec codec = new ScoreCodec(SEASON_START, 1000);
+
+    @Test
+    void testEarlierLikeRanksHigherWithSameLikes() {
+        double earlier = codec.encode(100, SEASON_START + 5_000);
+        double later = codec.encode(100, SEASON_START + 6_000);
+        double more = codec.encode(101, SEASON_START + 90L * 24 * 3600 * 1000);
+
+        assertTrue(earlier > later);
+        assertTrue(more > earlier);
+        assertEquals(100, ScoreCodec.likes(earlier));
+        assertEquals(101, ScoreCodec.likes(more));
+    }
+
+    @Test
+    void testMaxLikesIsExactInDouble() {
+        long encoded = codec.encode(ScoreCodec.MAX_LIKES, SEASON_START);
+
+        assertTrue(encoded < 1L << 53);
+        assertEquals(encoded, (long) (double) encoded);
+        assertEquals(ScoreCodec.MAX_LIKES, ScoreCodec.likes((double) encoded));
+    }
+
+    @Test
+    void testTimePartIsClamped() {
+        assertEquals(ScoreCodec.TIME_MASK, codec.timePart(SEASON_START - 1000));
+        assertEquals(0, new ScoreCodec(SEASON_START, 1).timePart(SEASON_START + (1L << 40)));
+    }
+
+    @Test
+    void testLegacyScoreDecodesIntegerPart() {
+        assertTrue(ScoreCodec.isLegacy(1234.5678));
+        assertEquals(1234, ScoreCodec.likes(1234.5678));
+        assertEquals(0, ScoreCodec.likes((Double) null));
+    }
+
+    @Test
+    void testLuaScriptsUseSameLayout() throws IOException {
+        // 点赞和迁移脚本中的编码常量必须与ScoreCodec一致
+        for (String script : new String[]{"lua/like.lua", "lua/migrate_score_encoding.lua"}) {
+            String source = new ClassPathResource(script).getContentAsString(StandardCharsets.UTF_8);
+            assertTrue(source.contains("local TIME_SPAN = " + (1L << ScoreCodec.TIME_BITS) + " "), script);
+        }
+        String like = new ClassPathResource("lua/like.lua").getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(like.contains("local MAX_LIKES = " + ScoreCodec.MAX_LIKES + " "));
+    }
+}
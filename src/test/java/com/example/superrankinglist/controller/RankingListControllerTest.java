@@ -0,0 +1,156 @@
+package com.example.superrankinglist.controller;
+
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.service.SegmentTree;
+import com.example.superrankinglist.service.impl.LikeServiceImpl;
+import com.example.superrankinglist.service.impl.RankingListServiceImpl;
+import com.example.superrankinglist.service.impl.SegmentTreeServiceImpl;
+import com.example.superrankinglist.service.impl.TopKSnapshotCache;
+import com.example.superrankinglist.utils.UserContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * 排行榜控制器测试：前K名快照与条件请求
+ */
+public class RankingListControllerTest {
+
+    private static final String QUERY = "{\"rankingListId\":1,\"pageNum\":1,\"pageSize\":2}";
+
+    private TopKSnapshotCache cache;
+    private LikeServiceImpl likeService;
+    private MockMvc mockMvc;
+
+    /**
+     * Redis中排行榜的版本号
+     */
+    private String version = "3";
+
+    /**
+     * 管道请求是否来自快照重建，快照重建和排行榜查询的管道返回结果不同
+     */
+    private boolean loadingSnapshot;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(ArgumentMatchers.<RedisCallback<?>>any()))
+                .thenAnswer(invocation -> loadingSnapshot
+                        ? List.of(version, ranking(), 2L)
+                        : List.of(ranking(), 2L));
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("ranking:version:1")).thenAnswer(invocation -> version);
+        when(valueOperations.multiGet(any()))
+                .thenAnswer(invocation -> Collections.nCopies(((Collection<?>) invocation.getArgument(0)).size(), version));
+        // 点赞脚本：用户7的点赞数从40变为41，排行榜版本号加1
+        when(redisTemplate.execute(ArgumentMatchers.<RedisScript<List<Object>>>any(), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> {
+                    version = String.valueOf(Long.parseLong(version) + 1);
+                    return List.of(String.valueOf(40L << ScoreCodec.TIME_BITS), String.valueOf(41L << ScoreCodec.TIME_BITS), -1L);
+                });
+
+        RankingConfig rankingConfig = new RankingConfig();
+        rankingConfig.getSnapshot().setTopK(3);
+        cache = new TopKSnapshotCache(redisTemplate, rankingConfig, new ObjectMapper());
+
+        RankingListServiceImpl rankingListService = new RankingListServiceImpl();
+        ReflectionTestUtils.setField(rankingListService, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(rankingListService, "topKSnapshotCache", cache);
+
+        SegmentTreeServiceImpl segmentTreeService = mock(SegmentTreeServiceImpl.class);
+        when(segmentTreeService.getSegmentTree(1L)).thenReturn(mock(SegmentTree.class));
+        likeService = new LikeServiceImpl();
+        ReflectionTestUtils.setField(likeService, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(likeService, "segmentTreeServiceImpl", segmentTreeService);
+        ReflectionTestUtils.setField(likeService, "rankingConfig", rankingConfig);
+        ReflectionTestUtils.setField(likeService, "topKSnapshotCache", cache);
+        likeService.init();
+
+        RankingListController controller = new RankingListController();
+        ReflectionTestUtils.setField(controller, "rankingListService", rankingListService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void testOwnLikeInvalidatesSnapshotETag() throws Exception {
+        // 首次查询登记排行榜，由定时任务构建快照
+        query(null);
+        refreshSnapshot();
+        MvcResult cached = query(null);
+        String etag = cached.getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals(200, cached.getResponse().getStatus());
+        assertEquals(304, query(etag).getResponse().getStatus());
+
+        UserContext.setUserId(7L);
+        LikeDto likeDto = new LikeDto();
+        likeDto.setRankingListId(1L);
+        likeService.like(likeDto);
+
+        // 快照重建前，点赞的实例不能用快照的ETag返回304
+        MvcResult afterLike = query(etag);
+        assertEquals(200, afterLike.getResponse().getStatus());
+        assertNotEquals(etag, afterLike.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    private MvcResult query(String ifNoneMatch) throws Exception {
+        var request = post("/api/ranking/list").contentType(MediaType.APPLICATION_JSON).content(QUERY);
+        if (ifNoneMatch != null) {
+            request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return mockMvc.perform(request).andReturn();
+    }
+
+    private void refreshSnapshot() {
+        loadingSnapshot = true;
+        try {
+            cache.refresh();
+        } finally {
+            loadingSnapshot = false;
+        }
+    }
+
+    private static Set<ZSetOperations.TypedTuple<String>> ranking() {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new LinkedHashSet<>();
+        tuples.add(new DefaultTypedTuple<>("9", (double) (50L << ScoreCodec.TIME_BITS)));
+        tuples.add(new DefaultTypedTuple<>("7", (double) (40L << ScoreCodec.TIME_BITS)));
+        return tuples;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.superrankinglist.service;
+
+import com.example.superrankinglist.common.LikeEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 热点用户点赞合并测试
+ */
+public class HotLikeAggregatorTest {
+
+    @Test
+    void testCoalescesLikesAboveThreshold() {
+        HotLikeAggregator aggregator = new HotLikeAggregator(3);
+
+        // 前3次点赞未超过阈值，直接写入
+        for (int i = 0; i < 3; i++) {
+            assertFalse(aggregator.offer(1L, 7L, 1000 + i));
+        }
+        for (int i = 3; i < 10; i++) {
+            assertTrue(aggregator.offer(1L, 7L, 1000 + i));
+        }
+        // 其他用户不受影响
+        assertFalse(aggregator.offer(1L, 8L, 1005));
+
+        List<LikeEvent> pending = aggregator.drain(1010);
+        assertEquals(1, pending.size());
+        assertEquals(7L, pending.get(0).getUserId());
+        assertEquals(7, pending.get(0).getIncrement());
+        // 积分小数部分取最后一次点赞的时间
+        assertEquals(1009, pending.get(0).getTimestamp());
+        assertEquals(7L, aggregator.getStats().get("coalescedLikes"));
+        assertEquals(6L, aggregator.getStats().get("savedWrites"));
+    }
+
+    @Test
+    void testRequeuedLikesAreMergedWithLaterLikes() {
+        HotLikeAggregator aggregator = new HotLikeAggregator(1);
+        assertFalse(aggregator.offer(1L, 7L, 0));
+        assertTrue(aggregator.offer(1L, 7L, 10));
+        List<LikeEvent> failed = aggregator.drain(20);
+
+        // 写入失败放回后，之后的点赞不再直接写入，避免先于放回的点赞生效
+        aggregator.requeue(failed.get(0));
+        assertTrue(aggregator.offer(1L, 7L, 1500));
+
+        List<LikeEvent> pending = aggregator.drain(1510);
+        assertEquals(1, pending.size());
+        assertEquals(2, pending.get(0).getIncrement());
+        assertEquals(1500, pending.get(0).getTimestamp());
+        assertEquals(1L, aggregator.getStats().get("flushedUpdates"));
+    }
+
+    @Test
+    void testColdUserIsWrittenDirectlyAfterWindow() {
+        HotLikeAggregator aggregator = new HotLikeAggregator(1);
+        assertFalse(aggregator.offer(1L, 7L, 0));
+        assertTrue(aggregator.offer(1L, 7L, 10));
+        assertEquals(1, aggregator.drain(20).size());
+
+        // 速率窗口过期后清理，恢复直接写入
+        assertTrue(aggregator.drain(2000).isEmpty());
+        assertEquals(0, aggregator.getStats().get("trackedUsers"));
+        assertFalse(aggregator.offer(1L, 7L, 2001));
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.superrankinglist.service;
+
+import com.example.superrankinglist.common.LikeEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 异步点赞队列测试
+ */
+public class LikeIngestQueueTest {
+
+    @Test
+    void testRejectsWhenFullAndDrainsOnShutdown() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        LikeIngestQueue queue = new LikeIngestQueue(1, 2, 10, 10, 100, batch -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batch.forEach(event -> applied.add(event.getTimestamp()));
+            return List.of();
+        });
+
+        // 第一条点赞被消费线程取出后阻塞，队列再放入2条即满
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 1)));
+        blocked.await();
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 2)));
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 3)));
+        assertFalse(queue.offer(new LikeEvent(1L, 7L, 1, 4)));
+
+        release.countDown();
+        queue.shutdown(5000);
+
+        // 所有被接受的点赞按入队顺序写入，关闭后不再接受
+        assertEquals(List.of(1L, 2L, 3L), applied);
+        assertFalse(queue.offer(new LikeEvent(1L, 7L, 1, 5)));
+        assertEquals(2L, queue.getStats().get("rejected"));
+        assertEquals(3L, queue.getStats().get("applied"));
+    }
+
+    @Test
+    void testRetriesFailedLikesInOrder() {
+        AtomicInteger attempts = new AtomicInteger();
+        List<Long> applied = Collections.synchronizedList(new ArrayList<>());
+        LikeIngestQueue queue = new LikeIngestQueue(1, 10, 10, 1, 10, batch -> {
+            int attempt = attempts.incrementAndGet();
+            if (attempt == 1) {
+                throw new IllegalStateException("redis unavailable");
+            }
+            // 第二次只写入第一条，其余的点赞返回重试
+            List<LikeEvent> written = attempt == 2 ? batch.subList(0, 1) : batch;
+            written.forEach(event -> applied.add(event.getTimestamp()));
+            return new ArrayList<>(batch.subList(written.size(), batch.size()));
+        });
+
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 1)));
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 2)));
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 3)));
+        queue.shutdown(5000);
+
+        // 失败的点赞重试成功前不会写入之后的点赞
+        assertEquals(List.of(1L, 2L, 3L), applied);
+        assertEquals(3L, queue.getStats().get("applied"));
+        assertEquals(0L, queue.getStats().get("dropped"));
+    }
+
+    @Test
+    void testDropsFailedLikesAfterShutdownTimeout() {
+        LikeIngestQueue queue = new LikeIngestQueue(1, 10, 10, 10, 10, batch -> batch);
+        assertTrue(queue.offer(new LikeEvent(1L, 7L, 1, 1)));
+        queue.shutdown(100);
+
+        // 关闭前一直重试，超过关闭等待时间后放弃
+        assertEquals(0L, queue.getStats().get("applied"));
+        assertEquals(1L, queue.getStats().get("dropped"));
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.superrankinglist.service;
+
+import com.example.superrankinglist.common.FuzzyRank;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 线段树内存模式测试
+ */
+public class SegmentTreeTest {
+
+    private static final String SEGMENT_KEY = "ranking:segment:test";
+
+    private RedisTemplate<String, String> redisTemplate;
+    private HashOperations<String, Object, Object> hashOperations;
+    private SegmentTree segmentTree;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+
+        segmentTree = new SegmentTree(SEGMENT_KEY, redisTemplate, true);
+        segmentTree.buildTree(0.0, 1000000.0, 128);
+    }
+
+    @Test
+    void testGetRankReadsLocalCounts() {
+        segmentTree.insertScore(100);
+        segmentTree.insertScore(500000);
+        segmentTree.insertScore(900000);
+
+        // 高于500000分的用户只有1个
+        assertEquals(1, segmentTree.getRank(500000));
+        assertEquals(2, segmentTree.getRank(100));
+        verify(hashOperations, never()).get(anyString(), any());
+    }
+
+    @Test
+    void testUpdateScoreMovesUser() {
+        segmentTree.insertScore(100);
+        segmentTree.insertScore(200000);
+
+        segmentTree.updateScore(100, 300000);
+
+        assertEquals(0, segmentTree.getRank(300000));
+        assertEquals(1, segmentTree.getRank(200000));
+    }
+
+    @Test
+    void testFlushWritesPendingDeltasOnce() {
+        segmentTree.insertScore(100);
+
+        segmentTree.flush();
+        segmentTree.flush();
+
+        // 第二次回写时没有新的变化，不应访问Redis
+        verify(redisTemplate, times(1)).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+    }
+
+    @Test
+    void testWriteBehindFlushesAtThreshold() {
+        SegmentTree bufferedTree = new SegmentTree(SEGMENT_KEY, redisTemplate, false);
+        bufferedTree.setWriteBehind(true, 3, 0);
+        bufferedTree.buildTree(0.0, 1000000.0, 128);
+
+        bufferedTree.insertScore(100);
+        bufferedTree.updateScore(100, 300000);
+        verify(redisTemplate, never()).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+
+        // 第3次更新达到阈值，合并后的变化一次回写
+        bufferedTree.insertScore(500000);
+        verify(redisTemplate, times(1)).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+        verify(redisTemplate, never()).execute(ArgumentMatchers.<RedisScript<Object>>any(), anyList(), any(Object[].class));
+    }
+
+    @Test
+    void testRetiredTreeFlushesLateUpdates() {
+        SegmentTree bufferedTree = new SegmentTree(SEGMENT_KEY, redisTemplate, false);
+        bufferedTree.setWriteBehind(true, 0, 0);
+        bufferedTree.buildTree(0.0, 1000000.0, 128);
+        bufferedTree.insertScore(100);
+
+        bufferedTree.retire();
+        verify(redisTemplate, times(1)).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+
+        // 移除后仍持有引用的线程写入的变化立即回写
+        bufferedTree.insertScore(200000);
+        verify(redisTemplate, times(2)).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRefreshCountsMergesOtherInstances() {
+        // 其他实例写入Redis的计数：一个900000分的用户
+        SegmentTree otherTree = new SegmentTree(SEGMENT_KEY, redisTemplate, true);
+        otherTree.buildTree(0.0, 1000000.0, 128);
+        otherTree.initializeCounts(new long[]{900000});
+        ArgumentCaptor<Map<String, String>> stored = ArgumentCaptor.forClass(Map.class);
+        verify(hashOperations, times(3)).putAll(eq(SEGMENT_KEY), stored.capture());
+        when(hashOperations.entries(SEGMENT_KEY)).thenReturn(new HashMap<>(stored.getValue()));
+
+        // 本实例尚未回写的用户
+        segmentTree.insertScore(100);
+        assertEquals(0, segmentTree.getRank(100));
+
+        segmentTree.refreshCounts();
+
+        assertEquals(1, segmentTree.getRank(100));
+        assertEquals(0, segmentTree.getRank(900000));
+        assertEquals(2, segmentTree.getRank(1));
+    }
+
+    @Test
+    void testEquiDepthLeafLowers() {
+        // 大部分用户集中在低分段
+        long[] scores = new long[10000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = i < 9000 ? 1 + i % 50 : 1000 + i * 10;
+        }
+
+        long[] lowers = SegmentTree.computeEquiDepthLeafLowers(scores, 128, 1000000);
+
+        assertEquals(128, lowers.length);
+        assertEquals(1, lowers[0]);
+        for (int i = 1; i < lowers.length; i++) {
+            assertTrue(lowers[i] > lowers[i - 1]);
+        }
+        // 低分段应被划分为多个叶子区间
+        assertTrue(lowers[10] <= 50);
+    }
+
+    @Test
+    void testSketchBucketsNarrowErrorBound() {
+        SegmentTree sketchTree = new SegmentTree(SEGMENT_KEY, redisTemplate, true, 16);
+        sketchTree.buildTree(0.0, 1000000.0, 128);
+        // 同一个叶子区间内的用户集中在高分端
+        for (int i = 0; i < 100; i++) {
+            segmentTree.insertScore(7000 + i);
+            sketchTree.insertScore(7000 + i);
+        }
+
+        FuzzyRank coarse = segmentTree.estimateRank(100);
+        FuzzyRank fine = sketchTree.estimateRank(100);
+
+        // 没有用户高于7000分以下的子区间，排名误差应显著缩小
+        assertEquals(100, coarse.getErrorBound());
+        assertEquals(0, fine.getErrorBound());
+        assertEquals(100, fine.getRank());
+        // 真实排名落在误差范围内
+        FuzzyRank inBucket = sketchTree.estimateRank(7000);
+        assertTrue(Math.abs(inBucket.getRank() - 99) <= inBucket.getErrorBound());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.superrankinglist.service.impl;
+
+import com.example.superrankinglist.common.LikeEvent;
+import com.example.superrankinglist.common.ScoreCodec;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.dto.LikeDto;
+import com.example.superrankinglist.service.HotLikeAggregator;
+import com.example.superrankinglist.service.SegmentTree;
+import io.lettuce.core.RedisCommandExecutionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.invocation.Invocation;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.RedisScriptingCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量写入点赞失败时的重试测试：点赞脚本不是幂等的，只有确定未执行的条目可以重试
+ */
+public class LikePipelineRetryTest {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private LikeServiceImpl likeService;
+
+    /**
+     * 各用户的点赞脚本在管道中每次执行的返回结果，次数超出时重复最后一个结果
+     */
+    private Map<Long, List<Object>> replies;
+
+    /**
+     * 各用户的点赞脚本在管道中执行的次数
+     */
+    private final Map<Long, Integer> attempts = new HashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.execute(ArgumentMatchers.<RedisCallback<String>>any())).thenReturn("sha");
+        when(redisTemplate.executePipelined(ArgumentMatchers.<RedisCallback<?>>any())).thenAnswer(invocation -> {
+            RedisConnection connection = mock(RedisConnection.class);
+            RedisScriptingCommands scripting = mock(RedisScriptingCommands.class);
+            when(connection.scriptingCommands()).thenReturn(scripting);
+            invocation.<RedisCallback<?>>getArgument(0).doInRedis(connection);
+            // 按管道中各条命令的用户ID返回对应的结果
+            List<Object> results = new ArrayList<>();
+            for (Invocation evalSha : mockingDetails(scripting).getInvocations()) {
+                byte[][] keysAndArgs = (byte[][]) evalSha.getRawArguments()[3];
+                Long userId = Long.valueOf(new String(keysAndArgs[3], StandardCharsets.UTF_8));
+                int attempt = attempts.merge(userId, 1, Integer::sum);
+                List<Object> userReplies = replies.get(userId);
+                results.add(userReplies.get(Math.min(attempt, userReplies.size()) - 1));
+            }
+            throw new RedisPipelineException("pipeline failed", results);
+        });
+        likeService = newLikeService(new RankingConfig());
+    }
+
+    private LikeServiceImpl newLikeService(RankingConfig rankingConfig) {
+        SegmentTree segmentTree = mock(SegmentTree.class);
+        when(segmentTree.getRedisKey()).thenReturn("ranking:segment:1");
+        when(segmentTree.getLayoutArgs()).thenReturn(List.of());
+        SegmentTreeServiceImpl segmentTreeService = mock(SegmentTreeServiceImpl.class);
+        when(segmentTreeService.getSegmentTree(1L)).thenReturn(segmentTree);
+
+        rankingConfig.getLike().setHotThreshold(1);
+        LikeServiceImpl service = new LikeServiceImpl();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(service, "segmentTreeServiceImpl", segmentTreeService);
+        ReflectionTestUtils.setField(service, "rankingConfig", rankingConfig);
+        service.init();
+        return service;
+    }
+
+    @Test
+    void testOnlyRequeuesHotLikesRejectedBeforeExecution() {
+        // 每个用户第二次点赞起在本地合并
+        for (long userId = 7; userId <= 10; userId++) {
+            likeService.offerHotLike(1L, userId);
+            assertTrue(likeService.offerHotLike(1L, userId));
+        }
+        replies = Map.of(
+                7L, List.of(busy()),
+                8L, List.of(new QueryTimeoutException("Redis command timed out")),
+                9L, List.of(new RedisSystemException("ERR", new RedisCommandExecutionException("ERR Like count exceeds limit 33554431"))),
+                10L, List.of(written()));
+
+        likeService.flushHotLikes();
+
+        // 只有Redis执行前拒绝的用户7放回；超时的用户8可能已写入，不能重试
+        List<LikeEvent> requeued = hotLikeAggregator().drain(System.currentTimeMillis());
+        assertEquals(1, requeued.size());
+        assertEquals(7L, requeued.get(0).getUserId());
+        assertEquals(1, requeued.get(0).getIncrement());
+    }
+
+    @Test
+    void testRequeuesAllHotLikesWhenPipelineIsNotSent() {
+        for (long userId = 7; userId <= 8; userId++) {
+            likeService.offerHotLike(1L, userId);
+            likeService.offerHotLike(1L, userId);
+        }
+        when(redisTemplate.execute(ArgumentMatchers.<RedisCallback<String>>any()))
+                .thenThrow(new QueryTimeoutException("SCRIPT LOAD timed out"));
+
+        likeService.flushHotLikes();
+
+        // 加载脚本失败时管道尚未发送，所有合并更新都放回
+        assertEquals(2, hotLikeAggregator().drain(System.currentTimeMillis()).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAsyncIngestRetriesOnlyLikesRejectedBeforeExecution() {
+        RankingConfig rankingConfig = new RankingConfig();
+        rankingConfig.getLike().setAsyncIngest(true);
+        rankingConfig.getLike().setAsyncShards(1);
+        rankingConfig.getLike().setAsyncRetryBackoffMs(1);
+        LikeServiceImpl asyncService = newLikeService(rankingConfig);
+        // 用户7第一次被Redis拒绝，重试后写入；用户8超时，结果未知
+        replies = Map.of(7L, List.of(busy(), written()), 8L, List.of(new QueryTimeoutException("Redis command timed out")));
+        LikeDto likeDto = new LikeDto();
+        likeDto.setRankingListId(1L);
+
+        assertTrue(asyncService.enqueueLike(likeDto, 7L));
+        assertTrue(asyncService.enqueueLike(likeDto, 8L));
+        asyncService.shutdown();
+
+        assertEquals(2, attempts.get(7L));
+        assertEquals(1, attempts.get(8L));
+        Map<String, Object> stats = (Map<String, Object>) asyncService.getLikeStats().get("ingest");
+        assertEquals(1L, stats.get("retried"));
+        assertEquals(0L, stats.get("dropped"));
+    }
+
+    private static RedisSystemException busy() {
+        return new RedisSystemException("BUSY", new RedisCommandExecutionException("BUSY Redis is busy running a script"));
+    }
+
+    private static List<Object> written() {
+        return List.of(String.valueOf(1L << ScoreCodec.TIME_BITS), String.valueOf(2L << ScoreCodec.TIME_BITS), -1L);
+    }
+
+    private HotLikeAggregator hotLikeAggregator() {
+        return (HotLikeAggregator) ReflectionTestUtils.getField(likeService, "hotLikeAggregator");
+    }
+}
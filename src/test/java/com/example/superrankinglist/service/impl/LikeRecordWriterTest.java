@@ -0,0 +1,86 @@
+package com.example.superrankinglist.service.impl;
+
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.mapper.LikeMapper;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 点赞记录异步持久化测试
+ */
+public class LikeRecordWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LikeMapper likeMapper;
+    private LikeRecordWriter writer;
+    private Path spillFile;
+
+    @BeforeEach
+    void setUp() {
+        SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+        SqlSession session = mock(SqlSession.class);
+        likeMapper = mock(LikeMapper.class);
+        when(sqlSessionFactory.openSession(ExecutorType.BATCH, false)).thenReturn(session);
+        when(session.getMapper(LikeMapper.class)).thenReturn(likeMapper);
+
+        spillFile = tempDir.resolve("spill.log");
+        RankingConfig rankingConfig = new RankingConfig();
+        rankingConfig.getPersist().setMaxRetries(1);
+        rankingConfig.getPersist().setRetryBackoffMs(1);
+        rankingConfig.getPersist().setSpillFile(spillFile.toString());
+        writer = new LikeRecordWriter(sqlSessionFactory, rankingConfig);
+    }
+
+    @Test
+    void testSpillsWhenDatabaseUnavailableAndReplaysLater() throws Exception {
+        when(likeMapper.insertLikes(anyList()))
+                .thenThrow(new PersistenceException("connection refused"))
+                .thenThrow(new PersistenceException("connection refused"))
+                .thenReturn(2);
+
+        writer.enqueue(1L, 10L);
+        writer.enqueue(2L, 10L);
+        writer.flush();
+
+        // 重试1次后仍失败，写入溢出文件
+        assertEquals(2, Files.readAllLines(spillFile).size());
+        assertEquals(2L, writer.getStats().get("spilled"));
+
+        // 数据库恢复后重放溢出文件
+        writer.flush();
+        assertFalse(Files.exists(spillFile));
+        assertEquals(2L, writer.getStats().get("persisted"));
+        assertEquals(false, writer.getStats().get("spillFilePending"));
+        verify(likeMapper, times(3)).insertLikes(anyList());
+    }
+
+    @Test
+    void testFlushWritesQueuedRecordsInOneStatement() {
+        for (long userId = 1; userId <= 3; userId++) {
+            writer.enqueue(userId, 10L);
+        }
+        writer.flush();
+
+        verify(likeMapper, times(1)).insertLikes(anyList());
+        assertEquals(3L, writer.getStats().get("persisted"));
+        assertEquals(0, writer.getStats().get("queued"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.superrankinglist.service.impl;
+
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.mapper.RankingItemMapper;
+import com.example.superrankinglist.pojo.RankingItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.superrankinglist.service.impl.ZSetTestData.tuples;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 排行榜项目同步测试
+ */
+public class RankingItemWriterTest {
+
+    private static final String RANKING_KEY = "ranking:list:1";
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ZSetOperations<String, String> zSetOps;
+    private RankingItemMapper rankingItemMapper;
+    private RankingItemWriter writer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        zSetOps = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOps);
+        rankingItemMapper = mock(RankingItemMapper.class);
+
+        RankingConfig rankingConfig = new RankingConfig();
+        rankingConfig.getItemSync().setScanChunkSize(2);
+        writer = new RankingItemWriter(redisTemplate, rankingItemMapper, rankingConfig);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRankingComesFromChunkPosition() {
+        when(zSetOps.reverseRangeWithScores(RANKING_KEY, 0, 1)).thenReturn(tuples("9", 50.0, "7", 40.0));
+        when(zSetOps.reverseRangeWithScores(RANKING_KEY, 2, 3)).thenReturn(tuples("3", 30.0, "8", 20.0));
+
+        writer.markDirty(1L, 7L);
+        writer.markDirty(1L, 8L);
+        writer.sync();
+
+        ArgumentCaptor<List<RankingItem>> captor = ArgumentCaptor.forClass(List.class);
+        verify(rankingItemMapper).upsertScores(captor.capture());
+        List<RankingItem> items = captor.getValue();
+        assertEquals(2, items.size());
+        assertEquals(7L, items.get(0).getUserId());
+        assertEquals(2L, items.get(0).getRanking());
+        assertEquals(40.0, items.get(0).getScore());
+        assertEquals(8L, items.get(1).getUserId());
+        assertEquals(4L, items.get(1).getRanking());
+        // 找到所有用户后不再继续读取
+        verify(zSetOps, never()).reverseRangeWithScores(RANKING_KEY, 4, 5);
+        assertEquals(0, writer.getStats().get("dirtyRankingLists"));
+    }
+
+    @Test
+    void testFailedWriteIsRetriedOnNextSync() {
+        when(zSetOps.reverseRangeWithScores(RANKING_KEY, 0, 1)).thenReturn(tuples("7", 40.0));
+        when(rankingItemMapper.upsertScores(anyList()))
+                .thenThrow(new RuntimeException("connection refused"))
+                .thenReturn(1);
+
+        writer.markDirty(1L, 7L);
+        writer.sync();
+        assertEquals(1, writer.getStats().get("dirtyRankingLists"));
+
+        writer.sync();
+        verify(rankingItemMapper, times(2)).upsertScores(anyList());
+        assertEquals(0, writer.getStats().get("dirtyRankingLists"));
+        assertEquals(1L, writer.getStats().get("synced"));
+    }
+
+    @Test
+    void testConstraintViolationFallsBackToRowByRow() {
+        when(zSetOps.reverseRangeWithScores(RANKING_KEY, 0, 1)).thenReturn(tuples("9", 50.0, "7", 40.0));
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("foreign key",
+                new SQLIntegrityConstraintViolationException("Cannot add or update a child row"));
+        // 用户9的记录违反外键约束，批量写入和单独写入都失败
+        when(rankingItemMapper.upsertScores(anyList())).thenAnswer(invocation -> {
+            List<RankingItem> items = invocation.getArgument(0);
+            if (items.size() > 1 || items.get(0).getUserId() == 9L) {
+                throw violation;
+            }
+            return 1;
+        });
+
+        writer.markDirty(1L, 9L);
+        writer.markDirty(1L, 7L);
+        writer.sync();
+
+        // 出错的记录被丢弃，不再重新标记
+        verify(rankingItemMapper, times(3)).upsertScores(anyList());
+        assertEquals(0, writer.getStats().get("dirtyRankingLists"));
+        assertEquals(1L, writer.getStats().get("synced"));
+        assertEquals(1L, writer.getStats().get("dropped"));
+        assertEquals(0L, writer.getStats().get("failed"));
+    }
+
+    @Test
+    void testUsersNotFoundAreCheckedInOnePipeline() {
+        when(zSetOps.reverseRangeWithScores(RANKING_KEY, 0, 1)).thenReturn(tuples("9", 50.0));
+        when(redisTemplate.executePipelined(ArgumentMatchers.<RedisCallback<?>>any()))
+                .thenReturn(Arrays.asList(30.0, null));
+
+        writer.markDirty(1L, 7L);
+        writer.markDirty(1L, 8L);
+        writer.sync();
+
+        // 两个用户只执行一次管道；仍在排行榜中的用户留到下次同步
+        verify(redisTemplate, times(1)).executePipelined(ArgumentMatchers.<RedisCallback<?>>any());
+        verify(zSetOps, never()).score(ArgumentMatchers.anyString(), ArgumentMatchers.any());
+        assertEquals(1, writer.getStats().get("dirtyRankingLists"));
+    }
+}
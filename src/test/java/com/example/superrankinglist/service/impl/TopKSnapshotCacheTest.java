@@ -0,0 +1,118 @@
+package com.example.superrankinglist.service.impl;
+
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.example.superrankinglist.common.CachedPage;
+import com.example.superrankinglist.common.Result;
+import com.example.superrankinglist.config.RankingConfig;
+import com.example.superrankinglist.pojo.RankingItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static com.example.superrankinglist.service.impl.ZSetTestData.tuples;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 前K名快照测试
+ */
+public class TopKSnapshotCacheTest {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private TopKSnapshotCache cache;
+
+    /**
+     * Redis中排行榜的版本号
+     */
+    private String version = "3";
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenAnswer(invocation -> List.of(version, tuples("9", 50.0, "7", 40.0, "3", 30.0), 5L));
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.multiGet(any()))
+                .thenAnswer(invocation -> Collections.nCopies(((Collection<?>) invocation.getArgument(0)).size(), version));
+
+        RankingConfig rankingConfig = new RankingConfig();
+        rankingConfig.getSnapshot().setTopK(3);
+        cache = new TopKSnapshotCache(redisTemplate, rankingConfig, new ObjectMapper());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPagesInsideSnapshotAreServedLocally() {
+        // 首次查询只登记排行榜，由定时任务构建快照
+        assertNull(cache.getPage(1L, 0, 1, 1, 2));
+        cache.refresh();
+
+        Page<RankingItem> page = cache.getPage(1L, 1, 2, 2, 2);
+        assertEquals(2, page.getRecords().size());
+        assertEquals(7L, page.getRecords().get(0).getUserId());
+        assertEquals(2L, page.getRecords().get(0).getRanking());
+        assertEquals(30.0, page.getRecords().get(1).getScore());
+        assertEquals(5, page.getTotal());
+        // 超出快照范围的查询由调用方访问Redis
+        assertNull(cache.getPage(1L, 2, 3, 2, 2));
+
+        // 版本号没有变化、没有写入且未超过最大存活时间时不重建
+        cache.refresh();
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        cache.markChanged(1L);
+        // 本实例写入后重建前不再使用快照
+        assertNull(cache.getPage(1L, 1, 2, 2, 2));
+        cache.refresh();
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+        // 其他实例的写入使版本号变化
+        version = "4";
+        cache.refresh();
+        verify(redisTemplate, times(3)).executePipelined(any(RedisCallback.class));
+        assertEquals(4L, cache.getVersion(1L));
+        // 本实例写入后快照的版本号已过期，由调用方读取Redis中的版本号
+        cache.markChanged(1L);
+        assertNull(cache.getVersion(1L));
+    }
+
+    @Test
+    void testCachedPageIsSerializedOncePerSnapshot() throws Exception {
+        assertNull(cache.getCachedPage(1L, 0, 1, 1, 2));
+        cache.refresh();
+
+        CachedPage cached = cache.getCachedPage(1L, 0, 1, 1, 2);
+        ObjectMapper objectMapper = new ObjectMapper();
+        byte[] expected = objectMapper.writeValueAsBytes(Result.success(cache.getPage(1L, 0, 1, 1, 2)));
+        assertArrayEquals(expected, cached.getJson());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(cached.getGzip()))) {
+            assertArrayEquals(expected, gzip.readAllBytes());
+        }
+        assertSame(cached, cache.getCachedPage(1L, 0, 1, 1, 2));
+        assertEquals("gzip", cached.toResponse("gzip, deflate").getHeaders().getFirst("Content-Encoding"));
+        assertNull(cached.toResponse(null).getHeaders().getFirst("Content-Encoding"));
+
+        // 版本号变化后重建快照，使用新的ETag
+        version = "4";
+        cache.refresh();
+        CachedPage rebuilt = cache.getCachedPage(1L, 0, 1, 1, 2);
+        assertNotEquals(cached.getEtag(), rebuilt.getEtag());
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.superrankinglist.service.impl;
+
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * 测试用的有序集合数据
+ */
+final class ZSetTestData {
+
+    private ZSetTestData() {
+    }
+
+    /**
+     * 按顺序构造有序集合的成员和分数
+     * @param memberScores 成员、分数交替排列
+     */
+    static Set<ZSetOperations.TypedTuple<String>> tuples(Object... memberScores) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = new LinkedHashSet<>();
+        for (int i = 0; i < memberScores.length; i += 2) {
+            tuples.add(new DefaultTypedTuple<>((String) memberScores[i], (Double) memberScores[i + 1]));
+        }
+        return tuples;
+    }
+}